@@ -0,0 +1,183 @@
+/*
+ * This file is part of ViaCosmicReach - https://github.com/RaphiMC/ViaCosmicReach
+ * Copyright (C) 2024-2024 RK_01/RaphiMC and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.raphimc.viacosmicreach.api.chunk;
+
+import io.netty.buffer.ByteBuf;
+
+import java.util.Arrays;
+
+/**
+ * Compact storage for the 16x16x16 block state ids of a chunk section. Stores a palette of distinct block state ids and the palette indices bit-packed into longs.
+ * Indices don't span multiple longs. If the section consists of a single block state, no indices are stored at all.
+ * Blocks are indexed by y << 8 | z << 4 | x.
+ */
+public class BlockStateStorage {
+
+    public static final int SIZE = 16 * 16 * 16;
+
+    private int[] palette;
+    private int paletteSize;
+    private int bitsPerEntry;
+    private long[] data;
+
+    public BlockStateStorage(final int blockState) {
+        this.palette = new int[]{blockState};
+        this.paletteSize = 1;
+        this.bitsPerEntry = 0;
+        this.data = null;
+    }
+
+    private BlockStateStorage(final int[] palette, final int paletteSize, final int bitsPerEntry, final long[] data) {
+        this.palette = palette;
+        this.paletteSize = paletteSize;
+        this.bitsPerEntry = bitsPerEntry;
+        this.data = data;
+    }
+
+    /**
+     * Creates a storage from the given block state ids.
+     *
+     * @param blockStates The block state ids indexed by y << 8 | z << 4 | x
+     * @return The storage
+     */
+    public static BlockStateStorage fromArray(final int[] blockStates) {
+        final BlockStateStorage storage = new BlockStateStorage(blockStates[0]);
+        for (int idx = 1; idx < SIZE; idx++) {
+            if (blockStates[idx] != storage.palette[0]) { // Unset indices already point to the first palette entry
+                storage.set(idx, blockStates[idx]);
+            }
+        }
+        return storage;
+    }
+
+    public int get(final int idx) {
+        return this.palette[this.getPaletteIndex(idx)];
+    }
+
+    public int get(final int x, final int y, final int z) {
+        return this.get(y << 8 | z << 4 | x);
+    }
+
+    public int getPaletteIndex(final int idx) {
+        if (this.bitsPerEntry == 0) {
+            return 0;
+        }
+
+        final int valuesPerLong = 64 / this.bitsPerEntry;
+        return (int) ((this.data[idx / valuesPerLong] >>> ((idx % valuesPerLong) * this.bitsPerEntry)) & ((1L << this.bitsPerEntry) - 1));
+    }
+
+    public void set(final int idx, final int blockState) {
+        int paletteIndex = 0;
+        while (paletteIndex < this.paletteSize && this.palette[paletteIndex] != blockState) {
+            paletteIndex++;
+        }
+        if (paletteIndex == this.paletteSize) {
+            if (this.paletteSize == this.palette.length) {
+                this.palette = Arrays.copyOf(this.palette, this.palette.length * 2);
+            }
+            this.palette[this.paletteSize++] = blockState;
+            if (this.paletteSize > 1 << this.bitsPerEntry) {
+                this.resize(this.bitsPerEntry + 1);
+            }
+        }
+        if (this.bitsPerEntry != 0) {
+            this.setPaletteIndex(idx, paletteIndex);
+        }
+    }
+
+    public void set(final int x, final int y, final int z, final int blockState) {
+        this.set(y << 8 | z << 4 | x, blockState);
+    }
+
+    public boolean isSingleValue() {
+        return this.bitsPerEntry == 0;
+    }
+
+    /**
+     * @return The palette. Only the first {@link #getPaletteSize()} entries are valid and not every entry has to be in use.
+     */
+    public int[] getPalette() {
+        return this.palette;
+    }
+
+    public int getPaletteSize() {
+        return this.paletteSize;
+    }
+
+    public void write(final ByteBuf buffer) {
+        buffer.writeByte(this.bitsPerEntry);
+        buffer.writeShort(this.paletteSize);
+        for (int i = 0; i < this.paletteSize; i++) {
+            buffer.writeInt(this.palette[i]);
+        }
+        if (this.data != null) {
+            for (long value : this.data) {
+                buffer.writeLong(value);
+            }
+        }
+    }
+
+    public static BlockStateStorage read(final ByteBuf buffer) {
+        final int bitsPerEntry = buffer.readUnsignedByte();
+        final int paletteSize = buffer.readUnsignedShort();
+        final int[] palette = new int[paletteSize];
+        for (int i = 0; i < paletteSize; i++) {
+            palette[i] = buffer.readInt();
+        }
+        long[] data = null;
+        if (bitsPerEntry != 0) {
+            final int valuesPerLong = 64 / bitsPerEntry;
+            data = new long[(SIZE + valuesPerLong - 1) / valuesPerLong];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = buffer.readLong();
+            }
+        }
+        return new BlockStateStorage(palette, paletteSize, bitsPerEntry, data);
+    }
+
+    public BlockStateStorage copy() {
+        return new BlockStateStorage(Arrays.copyOf(this.palette, this.paletteSize), this.paletteSize, this.bitsPerEntry, this.data != null ? this.data.clone() : null);
+    }
+
+    private void setPaletteIndex(final int idx, final int paletteIndex) {
+        final int valuesPerLong = 64 / this.bitsPerEntry;
+        final int shift = (idx % valuesPerLong) * this.bitsPerEntry;
+        final long mask = (1L << this.bitsPerEntry) - 1;
+        this.data[idx / valuesPerLong] = (this.data[idx / valuesPerLong] & ~(mask << shift)) | ((long) paletteIndex << shift);
+    }
+
+    private void resize(final int bitsPerEntry) {
+        final int[] paletteIndices = new int[SIZE];
+        if (this.bitsPerEntry != 0) {
+            for (int idx = 0; idx < SIZE; idx++) {
+                paletteIndices[idx] = this.getPaletteIndex(idx);
+            }
+        }
+
+        final int valuesPerLong = 64 / bitsPerEntry;
+        this.bitsPerEntry = bitsPerEntry;
+        this.data = new long[(SIZE + valuesPerLong - 1) / valuesPerLong];
+        for (int idx = 0; idx < SIZE; idx++) {
+            if (paletteIndices[idx] != 0) {
+                this.setPaletteIndex(idx, paletteIndices[idx]);
+            }
+        }
+    }
+
+}
@@ -17,11 +17,14 @@
  */
 package net.raphimc.viacosmicreach.api.chunk;
 
-import finalforeach.cosmicreach.savelib.blockdata.IBlockData;
-import finalforeach.cosmicreach.savelib.lightdata.blocklight.IBlockLightData;
-import finalforeach.cosmicreach.savelib.lightdata.skylight.ISkylightData;
-
 import java.util.List;
 
-public record CosmicReachChunkSection(IBlockData<Integer> blockData, ISkylightData skylightData, IBlockLightData blockLightData, List<CosmicReachBlockEntity> blockEntities) {
+/**
+ * @param blockStates   The cosmic reach block state ids
+ * @param skyLight      The sky light nibble array or null if the section has no sky light data. Sections read from the network never have sky light data, since it isn't used for remapping. Uniform arrays are shared (See {@link net.raphimc.viacosmicreach.api.util.LightUtil}) and must not be modified.
+ * @param blockLight    The block light nibble array (Brightest color channel) or null if the section has no block light. Uniform arrays are shared and must not be modified.
+ * @param blockEntities The block entities
+ * @param contentHash   The SHA-256 hash of the serialized block data and block light of the section or null if the section was modified after it has been read
+ */
+public record CosmicReachChunkSection(BlockStateStorage blockStates, byte[] skyLight, byte[] blockLight, List<CosmicReachBlockEntity> blockEntities, byte[] contentHash) {
 }
@@ -0,0 +1,425 @@
+/*
+ * This file is part of ViaCosmicReach - https://github.com/RaphiMC/ViaCosmicReach
+ * Copyright (C) 2024-2024 RK_01/RaphiMC and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.raphimc.viacosmicreach.api.io;
+
+import com.viaversion.viaversion.libs.gson.*;
+import io.netty.buffer.ByteBuf;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.function.Consumer;
+
+/**
+ * Lenient JSON reader for the JSON dialect used by cosmic reach, which allows unquoted values and keys, single quoted strings, trailing commas and ';' as separator.
+ * Reads UTF-8 encoded JSON directly from a {@link ByteBuf} and builds the Gson tree in a single pass.
+ */
+public class LenientJsonReader {
+
+    private static final int MAX_DEPTH = 512;
+    private static final String VALUE_TERMINATORS = ",]}/\\\"[{;#";
+    private static final String KEY_TERMINATORS = ",:]}/\\\"[{;=#";
+
+    private final ByteBuf buffer;
+    private final int end;
+    private int index;
+    private int previousIndex = -1;
+
+    /**
+     * @param buffer The buffer to read from. The reader index of the buffer is not modified.
+     * @param index  The index of the first byte of the JSON text
+     * @param length The length of the JSON text in bytes
+     */
+    public LenientJsonReader(final ByteBuf buffer, final int index, final int length) {
+        this.buffer = buffer;
+        this.index = index;
+        this.end = index + length;
+    }
+
+    /**
+     * Reads the int length prefix of a JSON payload and skips the payload in the buffer.
+     *
+     * @param buffer The buffer to read from
+     * @return A reader for the payload or null if the length is -1 (null string)
+     */
+    public static LenientJsonReader readLengthPrefixed(final ByteBuf buffer) {
+        final int length = buffer.readInt();
+        if (length == -1) {
+            return null;
+        }
+
+        final int index = buffer.readerIndex();
+        buffer.skipBytes(length);
+        return new LenientJsonReader(buffer, index, length);
+    }
+
+    public JsonElement read() {
+        return this.readValue(0);
+    }
+
+    /**
+     * Validates the structure of the next value and skips it without building any objects.
+     */
+    public void skip() {
+        this.skipValue(0);
+    }
+
+    /**
+     * Reads the given top-level fields of an object. All other fields are skipped without building any objects.
+     *
+     * @param fields The names of the fields to read
+     * @return The values of the fields in the same order as the names. Missing fields are null.
+     */
+    public JsonElement[] readFields(final String... fields) {
+        final JsonElement[] values = new JsonElement[fields.length];
+        if (this.nextClean() != '{') {
+            throw this.syntaxError("A JSONObject text must begin with '{'");
+        }
+        this.readObjectEntries(1, key -> {
+            for (int i = 0; i < fields.length; i++) {
+                if (fields[i].equals(key)) {
+                    if (values[i] != null) {
+                        throw this.syntaxError("Duplicate key \"" + key + "\"");
+                    }
+                    values[i] = this.readValue(1);
+                    return;
+                }
+            }
+            this.skipValue(1);
+        });
+        return values;
+    }
+
+    private JsonElement readValue(final int depth) {
+        final int c = this.nextClean();
+        switch (c) {
+            case '{' -> {
+                final JsonObject object = new JsonObject();
+                this.readObjectEntries(depth + 1, key -> {
+                    if (object.has(key)) {
+                        throw this.syntaxError("Duplicate key \"" + key + "\"");
+                    }
+                    object.add(key, this.readValue(depth + 1));
+                });
+                return object;
+            }
+            case '[' -> {
+                final JsonArray array = new JsonArray();
+                this.readArrayElements(depth + 1, () -> array.add(this.readValue(depth + 1)), () -> array.add(JsonNull.INSTANCE));
+                return array;
+            }
+            case '"', '\'' -> {
+                final StringBuilder sb = new StringBuilder();
+                this.readString(c, sb);
+                return new JsonPrimitive(sb.toString());
+            }
+            default -> {
+                final StringBuilder sb = new StringBuilder();
+                this.readUnquotedString(c, VALUE_TERMINATORS, sb);
+                return toJsonPrimitive(sb.toString().trim());
+            }
+        }
+    }
+
+    private void skipValue(final int depth) {
+        final int c = this.nextClean();
+        switch (c) {
+            case '{' -> this.readObjectEntries(depth + 1, key -> this.skipValue(depth + 1));
+            case '[' -> this.readArrayElements(depth + 1, () -> this.skipValue(depth + 1), () -> {
+            });
+            case '"', '\'' -> this.readString(c, null);
+            default -> this.readUnquotedString(c, VALUE_TERMINATORS, null);
+        }
+    }
+
+    /**
+     * Reads the entries of an object whose opening brace has already been read.
+     *
+     * @param depth       The depth of the object
+     * @param valueReader Called for every key. Has to read or skip the value.
+     */
+    private void readObjectEntries(final int depth, final Consumer<String> valueReader) {
+        if (depth > MAX_DEPTH) {
+            throw this.syntaxError("JSON Array or Object depth too large to process");
+        }
+
+        int c = this.nextClean();
+        if (c == '}') {
+            return;
+        }
+        while (true) {
+            final StringBuilder key = new StringBuilder();
+            switch (c) {
+                case -1 -> throw this.syntaxError("A JSONObject text must end with '}'");
+                case '{', '[' -> throw this.syntaxError("A JSON Object can not directly nest another JSON Object or JSON Array");
+                case '"', '\'' -> this.readString(c, key);
+                default -> this.readUnquotedString(c, KEY_TERMINATORS, key);
+            }
+            if (this.nextClean() != ':') {
+                throw this.syntaxError("Expected a ':' after a key");
+            }
+            valueReader.accept(c == '"' || c == '\'' ? key.toString() : key.toString().trim());
+
+            switch (this.nextClean()) {
+                case ',', ';' -> {
+                    c = this.nextClean();
+                    if (c == '}') {
+                        return;
+                    }
+                }
+                case '}' -> {
+                    return;
+                }
+                default -> throw this.syntaxError("Expected a ',' or '}'");
+            }
+        }
+    }
+
+    /**
+     * Reads the elements of an array whose opening bracket has already been read.
+     *
+     * @param depth         The depth of the array
+     * @param elementReader Called for every element. Has to read or skip the element.
+     * @param nullElement   Called for every omitted element (e.g. [1,,2])
+     */
+    private void readArrayElements(final int depth, final Runnable elementReader, final Runnable nullElement) {
+        if (depth > MAX_DEPTH) {
+            throw this.syntaxError("JSON Array or Object depth too large to process");
+        }
+
+        int c = this.nextClean();
+        if (c == -1) {
+            throw this.syntaxError("Expected a ',' or ']'");
+        } else if (c == ']') {
+            return;
+        }
+        this.back();
+        while (true) {
+            if (this.nextClean() == ',') {
+                this.back();
+                nullElement.run();
+            } else {
+                this.back();
+                elementReader.run();
+            }
+
+            switch (this.nextClean()) {
+                case ',' -> {
+                    c = this.nextClean();
+                    if (c == -1) {
+                        throw this.syntaxError("Expected a ',' or ']'");
+                    } else if (c == ']') {
+                        return;
+                    }
+                    this.back();
+                }
+                case ']' -> {
+                    return;
+                }
+                default -> throw this.syntaxError("Expected a ',' or ']'");
+            }
+        }
+    }
+
+    /**
+     * @param quote The quote character which has already been read
+     * @param sb    The builder to append the string to or null to skip the string
+     */
+    private void readString(final int quote, final StringBuilder sb) {
+        while (true) {
+            final int c = this.next();
+            switch (c) {
+                case -1, '\n', '\r' -> throw this.syntaxError("Unterminated string");
+                case '\\' -> {
+                    final int escaped = this.next();
+                    final char unescaped = switch (escaped) {
+                        case 'b' -> '\b';
+                        case 't' -> '\t';
+                        case 'n' -> '\n';
+                        case 'f' -> '\f';
+                        case 'r' -> '\r';
+                        case 'u' -> {
+                            int value = 0;
+                            for (int i = 0; i < 4; i++) {
+                                final int digit = Character.digit(this.next(), 16);
+                                if (digit == -1) {
+                                    throw this.syntaxError("Illegal escape");
+                                }
+                                value = value << 4 | digit;
+                            }
+                            yield (char) value;
+                        }
+                        case '"', '\'', '\\', '/' -> (char) escaped;
+                        default -> throw this.syntaxError("Illegal escape");
+                    };
+                    if (sb != null) {
+                        sb.append(unescaped);
+                    }
+                }
+                default -> {
+                    if (c == quote) {
+                        return;
+                    }
+                    if (sb != null) {
+                        sb.appendCodePoint(c);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @param c           The first character which has already been read
+     * @param terminators The characters which end the string
+     * @param sb          The builder to append the untrimmed string to or null to skip the string
+     */
+    private void readUnquotedString(int c, final String terminators, final StringBuilder sb) {
+        boolean empty = true;
+        while (c >= ' ' && terminators.indexOf(c) < 0) {
+            empty &= c == ' ';
+            if (sb != null) {
+                sb.appendCodePoint(c);
+            }
+            c = this.next();
+        }
+        if (c != -1) {
+            this.back();
+        }
+
+        if (empty) {
+            throw this.syntaxError("Missing value");
+        }
+    }
+
+    private int nextClean() {
+        while (true) {
+            final int c = this.next();
+            if (c == -1 || c > ' ') {
+                return c;
+            }
+        }
+    }
+
+    /**
+     * @return The next unicode code point or -1 if the end has been reached
+     */
+    private int next() {
+        if (this.index >= this.end) {
+            this.previousIndex = this.index;
+            return -1;
+        }
+
+        this.previousIndex = this.index;
+        final int b = this.buffer.getByte(this.index++);
+        if (b >= 0) {
+            return b;
+        }
+
+        final int additionalBytes;
+        int codePoint;
+        if ((b & 0xE0) == 0xC0) {
+            additionalBytes = 1;
+            codePoint = b & 0x1F;
+        } else if ((b & 0xF0) == 0xE0) {
+            additionalBytes = 2;
+            codePoint = b & 0x0F;
+        } else if ((b & 0xF8) == 0xF0) {
+            additionalBytes = 3;
+            codePoint = b & 0x07;
+        } else {
+            return 0xFFFD;
+        }
+        for (int i = 0; i < additionalBytes; i++) {
+            if (this.index >= this.end || (this.buffer.getByte(this.index) & 0xC0) != 0x80) {
+                return 0xFFFD;
+            }
+            codePoint = codePoint << 6 | (this.buffer.getByte(this.index++) & 0x3F);
+        }
+        return Character.isValidCodePoint(codePoint) ? codePoint : 0xFFFD;
+    }
+
+    private void back() {
+        if (this.previousIndex == -1) {
+            throw new IllegalStateException("Stepping back two steps is not supported");
+        }
+        this.index = this.previousIndex;
+        this.previousIndex = -1;
+    }
+
+    private JsonSyntaxException syntaxError(final String message) {
+        return new JsonSyntaxException(message + " at byte " + this.index);
+    }
+
+    private static JsonElement toJsonPrimitive(final String string) {
+        if (string.equalsIgnoreCase("true")) {
+            return new JsonPrimitive(true);
+        } else if (string.equalsIgnoreCase("false")) {
+            return new JsonPrimitive(false);
+        } else if (string.equalsIgnoreCase("null")) {
+            return JsonNull.INSTANCE;
+        }
+
+        final char initial = string.charAt(0);
+        if ((initial >= '0' && initial <= '9') || initial == '-') {
+            final Number number = toNumber(string);
+            if (number != null) {
+                return new JsonPrimitive(number);
+            }
+        }
+        return new JsonPrimitive(string);
+    }
+
+    private static Number toNumber(final String string) {
+        final char initial = string.charAt(0);
+        if (string.indexOf('.') != -1 || string.indexOf('e') != -1 || string.indexOf('E') != -1 || string.equals("-0")) {
+            try {
+                final BigDecimal bigDecimal = new BigDecimal(string);
+                if (initial == '-' && BigDecimal.ZERO.compareTo(bigDecimal) == 0) {
+                    return -0D;
+                }
+                return bigDecimal;
+            } catch (NumberFormatException e) {
+                try {
+                    final double d = Double.parseDouble(string);
+                    return Double.isNaN(d) || Double.isInfinite(d) ? null : d;
+                } catch (NumberFormatException ignored) {
+                    return null;
+                }
+            }
+        }
+
+        // Numbers with leading zeros are strings
+        if (initial == '0' && string.length() > 1 && string.charAt(1) >= '0' && string.charAt(1) <= '9') {
+            return null;
+        } else if (initial == '-' && string.length() > 2 && string.charAt(1) == '0' && string.charAt(2) >= '0' && string.charAt(2) <= '9') {
+            return null;
+        }
+        try {
+            final BigInteger bigInteger = new BigInteger(string);
+            if (bigInteger.bitLength() <= 31) {
+                return bigInteger.intValue();
+            } else if (bigInteger.bitLength() <= 63) {
+                return bigInteger.longValue();
+            } else {
+                return bigInteger;
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+}
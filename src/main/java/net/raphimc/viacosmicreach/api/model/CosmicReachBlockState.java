@@ -17,37 +17,144 @@
  */
 package net.raphimc.viacosmicreach.api.model;
 
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
 
-public record CosmicReachBlockState(String id, Map<String, String> properties) {
+/**
+ * A cosmic reach block state. The properties are stored as parallel arrays sorted by key, so two block states are equal if their id and property maps are equal, regardless of the property order in the parsed string.
+ */
+public final class CosmicReachBlockState {
+
+    private static final String[] EMPTY = new String[0];
 
     public static final CosmicReachBlockState AIR = new CosmicReachBlockState("base:air", Collections.singletonMap("default", null));
 
+    private final String id;
+    private final String[] propertyKeys;
+    private final String[] propertyValues;
+    private final int hashCode;
+    private Map<String, String> properties;
+
     public CosmicReachBlockState(final String id, final Map<String, String> properties) {
         this.id = id;
-        this.properties = Collections.unmodifiableMap(properties);
+        this.propertyKeys = properties.keySet().toArray(EMPTY);
+        Arrays.sort(this.propertyKeys);
+        this.propertyValues = new String[this.propertyKeys.length];
+        for (int i = 0; i < this.propertyKeys.length; i++) {
+            this.propertyValues[i] = properties.get(this.propertyKeys[i]);
+        }
+        this.hashCode = this.computeHashCode();
+    }
+
+    private CosmicReachBlockState(final String id, final String[] propertyKeys, final String[] propertyValues) {
+        this.id = id;
+        this.propertyKeys = propertyKeys;
+        this.propertyValues = propertyValues;
+        this.hashCode = this.computeHashCode();
     }
 
     public static CosmicReachBlockState fromString(final String string) {
-        final String[] blockStringSplit = string.split("\\[", 2);
-        if (blockStringSplit.length == 1) {
-            return new CosmicReachBlockState(string, Collections.emptyMap());
-        } else {
-            final String id = blockStringSplit[0];
-            final String propertiesString = blockStringSplit[1].substring(0, blockStringSplit[1].length() - 1);
-            final Map<String, String> properties = new HashMap<>();
-            for (final String property : propertiesString.split(",")) {
-                final String[] split = property.split("=", 2);
-                if (split.length == 2) {
-                    properties.put(split[0], split[1]);
-                } else {
-                    properties.put(split[0], null);
-                }
+        final int propertiesStart = string.indexOf('[');
+        if (propertiesStart == -1) {
+            return new CosmicReachBlockState(string, EMPTY, EMPTY);
+        }
+
+        final String id = string.substring(0, propertiesStart);
+        final int propertiesEnd = string.length() - 1;
+        // Trailing empty properties are ignored, unless there is only one (Matches the behaviour of String#split)
+        int lastPropertyEnd = propertiesEnd;
+        while (lastPropertyEnd > propertiesStart + 1 && string.charAt(lastPropertyEnd - 1) == ',') {
+            lastPropertyEnd--;
+        }
+        if (lastPropertyEnd == propertiesStart + 1 && propertiesEnd != propertiesStart + 1) {
+            return new CosmicReachBlockState(id, EMPTY, EMPTY);
+        }
+
+        int propertyCount = 1;
+        for (int i = propertiesStart + 1; i < lastPropertyEnd; i++) {
+            if (string.charAt(i) == ',') {
+                propertyCount++;
             }
-            return new CosmicReachBlockState(id, properties);
         }
+
+        String[] propertyKeys = new String[propertyCount];
+        String[] propertyValues = new String[propertyCount];
+        int size = 0;
+        int propertyStart = propertiesStart + 1;
+        while (propertyStart <= lastPropertyEnd) {
+            int propertyEnd = string.indexOf(',', propertyStart);
+            if (propertyEnd == -1 || propertyEnd > lastPropertyEnd) {
+                propertyEnd = lastPropertyEnd;
+            }
+            final int separator = string.indexOf('=', propertyStart);
+            final String key;
+            final String value;
+            if (separator != -1 && separator < propertyEnd) {
+                key = string.substring(propertyStart, separator);
+                value = string.substring(separator + 1, propertyEnd);
+            } else {
+                key = string.substring(propertyStart, propertyEnd);
+                value = null;
+            }
+
+            // Insert sorted, later duplicates replace earlier ones
+            int idx = 0;
+            int cmp = 1;
+            while (idx < size && (cmp = propertyKeys[idx].compareTo(key)) < 0) {
+                idx++;
+            }
+            if (idx < size && cmp == 0) {
+                propertyValues[idx] = value;
+            } else {
+                System.arraycopy(propertyKeys, idx, propertyKeys, idx + 1, size - idx);
+                System.arraycopy(propertyValues, idx, propertyValues, idx + 1, size - idx);
+                propertyKeys[idx] = key;
+                propertyValues[idx] = value;
+                size++;
+            }
+            propertyStart = propertyEnd + 1;
+        }
+        if (size != propertyCount) {
+            propertyKeys = Arrays.copyOf(propertyKeys, size);
+            propertyValues = Arrays.copyOf(propertyValues, size);
+        }
+
+        return new CosmicReachBlockState(id, propertyKeys, propertyValues);
+    }
+
+    public String id() {
+        return this.id;
+    }
+
+    public Map<String, String> properties() {
+        if (this.properties == null) {
+            final Map<String, String> properties = new HashMap<>(this.propertyKeys.length * 2);
+            for (int i = 0; i < this.propertyKeys.length; i++) {
+                properties.put(this.propertyKeys[i], this.propertyValues[i]);
+            }
+            this.properties = Collections.unmodifiableMap(properties);
+        }
+        return this.properties;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) return true;
+        if (!(o instanceof CosmicReachBlockState that)) return false;
+        return this.hashCode == that.hashCode && this.id.equals(that.id) && Arrays.equals(this.propertyKeys, that.propertyKeys) && Arrays.equals(this.propertyValues, that.propertyValues);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return "CosmicReachBlockState[id=" + this.id + ", properties=" + this.properties() + "]";
+    }
+
+    private int computeHashCode() {
+        return 31 * (31 * this.id.hashCode() + Arrays.hashCode(this.propertyKeys)) + Arrays.hashCode(this.propertyValues);
     }
 
 }
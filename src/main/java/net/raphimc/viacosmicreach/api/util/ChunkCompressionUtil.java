@@ -0,0 +1,167 @@
+/*
+ * This file is part of ViaCosmicReach - https://github.com/RaphiMC/ViaCosmicReach
+ * Copyright (C) 2024-2024 RK_01/RaphiMC and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.raphimc.viacosmicreach.api.util;
+
+import com.viaversion.viaversion.libs.fastutil.ints.Int2ObjectMap;
+import com.viaversion.viaversion.libs.fastutil.ints.Int2ObjectOpenHashMap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import net.raphimc.viacosmicreach.api.chunk.BlockStateStorage;
+import net.raphimc.viacosmicreach.api.chunk.CosmicReachChunk;
+import net.raphimc.viacosmicreach.api.chunk.CosmicReachChunkSection;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+public class ChunkCompressionUtil {
+
+    private static final int LIGHT_NULL = 0;
+    private static final int LIGHT_UNIFORM = 1;
+    private static final int LIGHT_ARRAY = 2;
+
+    // Deflaters and inflaters hold native memory, so they are reused per thread instead of being created for every chunk
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED));
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(Inflater::new);
+
+    /**
+     * Serializes and deflates a chunk. Block entities are not serialized, so only chunks without block entities can be compressed.
+     *
+     * @param chunk The chunk
+     * @return The compressed chunk
+     */
+    public static byte[] compress(final CosmicReachChunk chunk) {
+        final ByteBuf buffer = Unpooled.buffer();
+        try {
+            buffer.writeInt(chunk.x());
+            buffer.writeInt(chunk.z());
+            buffer.writeInt(chunk.sections().size());
+            for (Int2ObjectMap.Entry<CosmicReachChunkSection> entry : chunk.sections().int2ObjectEntrySet()) {
+                final CosmicReachChunkSection section = entry.getValue();
+                if (!section.blockEntities().isEmpty()) {
+                    throw new IllegalArgumentException("Chunks with block entities can't be compressed");
+                }
+
+                buffer.writeInt(entry.getIntKey());
+                section.blockStates().write(buffer);
+                writeLight(buffer, section.skyLight());
+                writeLight(buffer, section.blockLight());
+                if (section.contentHash() != null) {
+                    buffer.writeByte(section.contentHash().length);
+                    buffer.writeBytes(section.contentHash());
+                } else {
+                    buffer.writeByte(0);
+                }
+            }
+
+            final Deflater deflater = DEFLATER.get();
+            try {
+                deflater.setInput(buffer.nioBuffer());
+                deflater.finish();
+                // The first 4 bytes are reserved for the uncompressed length
+                byte[] compressedData = new byte[4 + Math.max(64, buffer.readableBytes() / 4)];
+                int compressedLength = 4;
+                while (!deflater.finished()) {
+                    if (compressedLength == compressedData.length) {
+                        compressedData = Arrays.copyOf(compressedData, compressedData.length * 2);
+                    }
+                    compressedLength += deflater.deflate(compressedData, compressedLength, compressedData.length - compressedLength);
+                }
+                final int length = buffer.readableBytes();
+                compressedData[0] = (byte) (length >>> 24);
+                compressedData[1] = (byte) (length >>> 16);
+                compressedData[2] = (byte) (length >>> 8);
+                compressedData[3] = (byte) length;
+                return compressedLength == compressedData.length ? compressedData : Arrays.copyOf(compressedData, compressedLength);
+            } finally {
+                deflater.reset(); // Also drops the reference to the input
+            }
+        } finally {
+            buffer.release();
+        }
+    }
+
+    public static CosmicReachChunk decompress(final byte[] compressedData) {
+        final int length = (compressedData[0] & 0xFF) << 24 | (compressedData[1] & 0xFF) << 16 | (compressedData[2] & 0xFF) << 8 | (compressedData[3] & 0xFF);
+        final byte[] data = new byte[length];
+        final Inflater inflater = INFLATER.get();
+        try {
+            inflater.setInput(compressedData, 4, compressedData.length - 4);
+            int offset = 0;
+            while (offset < length) {
+                final int inflated = inflater.inflate(data, offset, length - offset);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IllegalStateException("Compressed chunk data is truncated");
+                }
+                offset += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Compressed chunk data is corrupted", e);
+        } finally {
+            inflater.reset(); // Also drops the reference to the input
+        }
+
+        final ByteBuf buffer = Unpooled.wrappedBuffer(data);
+        final int x = buffer.readInt();
+        final int z = buffer.readInt();
+        final int sectionCount = buffer.readInt();
+        final Int2ObjectMap<CosmicReachChunkSection> sections = new Int2ObjectOpenHashMap<>(sectionCount);
+        for (int i = 0; i < sectionCount; i++) {
+            final int sectionY = buffer.readInt();
+            final BlockStateStorage blockStates = BlockStateStorage.read(buffer);
+            final byte[] skyLight = readLight(buffer);
+            final byte[] blockLight = readLight(buffer);
+            final int contentHashLength = buffer.readUnsignedByte();
+            final byte[] contentHash = contentHashLength != 0 ? new byte[contentHashLength] : null;
+            if (contentHash != null) {
+                buffer.readBytes(contentHash);
+            }
+            sections.put(sectionY, new CosmicReachChunkSection(blockStates, skyLight, blockLight, Collections.emptyList(), contentHash));
+        }
+        return new CosmicReachChunk(x, z, sections);
+    }
+
+    private static void writeLight(final ByteBuf buffer, final byte[] light) {
+        if (light == null) {
+            buffer.writeByte(LIGHT_NULL);
+        } else if (light == LightUtil.uniform(light[0])) {
+            buffer.writeByte(LIGHT_UNIFORM);
+            buffer.writeByte(light[0] & 15);
+        } else {
+            buffer.writeByte(LIGHT_ARRAY);
+            buffer.writeBytes(light);
+        }
+    }
+
+    private static byte[] readLight(final ByteBuf buffer) {
+        final int type = buffer.readUnsignedByte();
+        return switch (type) {
+            case LIGHT_NULL -> null;
+            case LIGHT_UNIFORM -> LightUtil.uniform(buffer.readUnsignedByte());
+            case LIGHT_ARRAY -> {
+                final byte[] light = new byte[LightUtil.LIGHT_ARRAY_SIZE];
+                buffer.readBytes(light);
+                yield light;
+            }
+            default -> throw new IllegalStateException("Unknown light type: " + type);
+        };
+    }
+
+}
@@ -0,0 +1,67 @@
+/*
+ * This file is part of ViaCosmicReach - https://github.com/RaphiMC/ViaCosmicReach
+ * Copyright (C) 2024-2024 RK_01/RaphiMC and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.raphimc.viacosmicreach.api.util;
+
+import java.util.Arrays;
+
+public class LightUtil {
+
+    public static final int LIGHT_ARRAY_SIZE = 2048;
+
+    private static final byte[][] UNIFORM_LIGHT = new byte[16][LIGHT_ARRAY_SIZE];
+
+    static {
+        for (int level = 0; level < UNIFORM_LIGHT.length; level++) {
+            Arrays.fill(UNIFORM_LIGHT[level], (byte) (level << 4 | level));
+        }
+    }
+
+    /**
+     * Shared nibble array with light level 0 everywhere. Must not be modified.
+     */
+    public static final byte[] EMPTY_LIGHT = UNIFORM_LIGHT[0];
+    /**
+     * Shared nibble array with light level 15 everywhere. Must not be modified.
+     */
+    public static final byte[] FULL_LIGHT = UNIFORM_LIGHT[15];
+
+    /**
+     * Returns the shared nibble array filled with the given light level. The returned array must not be modified.
+     *
+     * @param level The light level
+     * @return The shared nibble array
+     */
+    public static byte[] uniform(final int level) {
+        return UNIFORM_LIGHT[level & 15];
+    }
+
+    /**
+     * Replaces a nibble array which has the same light level everywhere with the corresponding shared nibble array.
+     *
+     * @param light The nibble array
+     * @return The shared nibble array if the light is uniform, otherwise the passed nibble array
+     */
+    public static byte[] share(final byte[] light) {
+        final byte[] uniformLight = UNIFORM_LIGHT[light[0] & 15];
+        if (light == uniformLight || Arrays.equals(light, uniformLight)) {
+            return uniformLight;
+        }
+        return light;
+    }
+
+}
@@ -0,0 +1,65 @@
+/*
+ * This file is part of ViaCosmicReach - https://github.com/RaphiMC/ViaCosmicReach
+ * Copyright (C) 2024-2024 RK_01/RaphiMC and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.raphimc.viacosmicreach.api.util;
+
+import com.viaversion.viaversion.api.type.Types;
+import com.viaversion.viaversion.util.MathUtil;
+import io.netty.buffer.ByteBuf;
+
+public class PaletteUtil {
+
+    private static final int MIN_INDIRECT_BITS_PER_ENTRY = 4;
+    private static final int MAX_INDIRECT_BITS_PER_ENTRY = 8;
+
+    public static void writeSingleValue(final ByteBuf buffer, final int value) {
+        buffer.writeByte(0); // bits per entry
+        Types.VAR_INT.writePrimitive(buffer, value); // value
+        Types.VAR_INT.writePrimitive(buffer, 0); // data length
+    }
+
+    public static void writeBlockStates(final ByteBuf buffer, final int[] palette, final int paletteSize, final short[] paletteIndices, final int globalPaletteBits) {
+        if (paletteSize == 1) {
+            writeSingleValue(buffer, palette[0]);
+            return;
+        }
+
+        final boolean direct = MathUtil.ceilLog2(paletteSize) > MAX_INDIRECT_BITS_PER_ENTRY;
+        final int bitsPerEntry = direct ? globalPaletteBits : Math.max(MIN_INDIRECT_BITS_PER_ENTRY, MathUtil.ceilLog2(paletteSize));
+        buffer.writeByte(bitsPerEntry); // bits per entry
+        if (!direct) {
+            Types.VAR_INT.writePrimitive(buffer, paletteSize); // palette length
+            for (int i = 0; i < paletteSize; i++) {
+                Types.VAR_INT.writePrimitive(buffer, palette[i]); // palette entry
+            }
+        }
+
+        final int valuesPerLong = Long.SIZE / bitsPerEntry;
+        final int longCount = (paletteIndices.length + valuesPerLong - 1) / valuesPerLong;
+        Types.VAR_INT.writePrimitive(buffer, longCount); // data length
+        int index = 0;
+        for (int i = 0; i < longCount; i++) {
+            long value = 0;
+            for (int j = 0; j < valuesPerLong && index < paletteIndices.length; j++, index++) {
+                final int entry = direct ? palette[paletteIndices[index]] : paletteIndices[index];
+                value |= (long) entry << (j * bitsPerEntry);
+            }
+            buffer.writeLong(value);
+        }
+    }
+
+}
@@ -0,0 +1,208 @@
+/*
+ * This file is part of ViaCosmicReach - https://github.com/RaphiMC/ViaCosmicReach
+ * Copyright (C) 2024-2024 RK_01/RaphiMC and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.raphimc.viacosmicreach.netty;
+
+import com.viaversion.viaversion.api.connection.UserConnection;
+import com.viaversion.viaversion.api.type.Types;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.CombinedChannelDuplexHandler;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.MessageToMessageEncoder;
+import io.netty.handler.codec.TooLongFrameException;
+import net.raphimc.viacosmicreach.ClientboundCosmicReachPackets;
+import net.raphimc.viacosmicreach.protocol.data.ProtocolConstants;
+import net.raphimc.viacosmicreach.protocol.model.ChunkColumnSection;
+import net.raphimc.viacosmicreach.protocol.storage.ChunkTracker;
+import net.raphimc.viacosmicreach.protocol.storage.ProtocolStorage;
+import net.raphimc.viacosmicreach.protocol.types.CosmicReachTypes;
+
+import java.util.List;
+
+/**
+ * Translates between cosmic reach frames (int length, short packet id) and VarInt packet id prefixed packets.
+ * Inbound packets are retained slices of the received data with the packet id rewritten in place over the frame header. Outbound packets get a separate header buffer, so the payload is never copied.
+ * Chunk column packets are not buffered as a whole. Their sections are decoded and merged into the {@link ChunkTracker} as soon as they have been received. Only single sections are subject to the maximum frame length.
+ */
+public class FrameCodec extends CombinedChannelDuplexHandler<FrameCodec.Decoder, FrameCodec.Encoder> {
+
+    private static final int HEADER_LENGTH = Integer.BYTES + Short.BYTES;
+
+    public FrameCodec(final UserConnection user) {
+        super(new Decoder(user), new Encoder());
+    }
+
+    public static class Decoder extends ByteToMessageDecoder {
+
+        private final UserConnection user;
+
+        // State of the chunk column packet which is currently being streamed
+        private ChunkTracker chunkTracker;
+        private int chunkColumnRemainingBytes;
+        private int chunkColumnRemainingSections;
+        private int failedSectionReadLength;
+
+        public Decoder(final UserConnection user) {
+            this.user = user;
+        }
+
+        @Override
+        protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
+            if (this.chunkTracker != null) {
+                this.streamChunkColumn(in);
+                return;
+            }
+            if (in.readableBytes() < Integer.BYTES) {
+                return;
+            }
+
+            final int frameStart = in.readerIndex();
+            final int length = in.getInt(frameStart);
+            if (length < Short.BYTES) {
+                throw new CorruptedFrameException("Invalid frame length: " + length);
+            }
+            if (in.readableBytes() < HEADER_LENGTH) {
+                return; // The packet id is required to decide whether the frame is streamed
+            }
+            if (this.isChunkColumn(in.getShort(frameStart + Integer.BYTES))) {
+                final ChunkTracker chunkTracker = this.user.get(ChunkTracker.class);
+                if (chunkTracker != null) {
+                    in.skipBytes(HEADER_LENGTH);
+                    this.chunkTracker = chunkTracker;
+                    this.chunkColumnRemainingBytes = length - Short.BYTES;
+                    this.chunkColumnRemainingSections = -1;
+                    this.failedSectionReadLength = 0;
+                    this.streamChunkColumn(in);
+                    return;
+                }
+            }
+            if (length > ProtocolConstants.MAX_FRAME_LENGTH) {
+                throw new TooLongFrameException("Frame length " + length + " exceeds the maximum of " + ProtocolConstants.MAX_FRAME_LENGTH);
+            }
+            if (in.readableBytes() - Integer.BYTES < length) {
+                return;
+            }
+
+            final int packetId = in.getShort(frameStart + Integer.BYTES);
+            final int bodyLength = length - Short.BYTES;
+            if (in.isReadOnly()) {
+                final ByteBuf header = ctx.alloc().buffer(5);
+                Types.VAR_INT.writePrimitive(header, packetId);
+                in.skipBytes(HEADER_LENGTH);
+                out.add(ctx.alloc().compositeBuffer(2).addComponents(true, header, in.readRetainedSlice(bodyLength)));
+            } else {
+                // The VarInt packet id is at most 5 bytes long, so it always fits into the 6 header bytes directly in front of the body
+                final int packetIdLength = getVarIntLength(packetId);
+                final ByteBuf packet = in.retainedSlice(frameStart + HEADER_LENGTH - packetIdLength, packetIdLength + bodyLength);
+                packet.writerIndex(0);
+                Types.VAR_INT.writePrimitive(packet, packetId);
+                packet.writerIndex(packet.capacity());
+                in.skipBytes(HEADER_LENGTH + bodyLength);
+                out.add(packet);
+            }
+        }
+
+        /**
+         * Reads as many sections of the current chunk column packet as have been received and merges them into the chunk tracker.
+         * Sections aren't length prefixed, so a section which has only been partially received is read again once more data is available.
+         * Packets decoded before the chunk column packet have already been passed on at this point, so the packet order is kept.
+         */
+        private void streamChunkColumn(final ByteBuf in) {
+            final ByteBuf frame = in.slice(in.readerIndex(), Math.min(in.readableBytes(), this.chunkColumnRemainingBytes));
+            final boolean complete = frame.readableBytes() == this.chunkColumnRemainingBytes;
+            int consumed = 0;
+            try {
+                if (this.chunkColumnRemainingSections == -1) {
+                    try {
+                        this.chunkColumnRemainingSections = CosmicReachTypes.CHUNK_COLUMN_HEADER.read(frame); // header
+                    } catch (IndexOutOfBoundsException e) {
+                        this.handleIncompleteRead(frame, consumed, complete, e);
+                        return;
+                    }
+                    consumed = frame.readerIndex();
+                    this.failedSectionReadLength = 0;
+                }
+                while (this.chunkColumnRemainingSections > 0) {
+                    if (!complete && frame.readableBytes() < this.failedSectionReadLength * 2) {
+                        return; // Wait for considerably more data to avoid reading large sections over and over again
+                    }
+                    final ChunkColumnSection chunkColumnSection;
+                    try {
+                        chunkColumnSection = CosmicReachTypes.CHUNK_COLUMN_SECTION.read(frame); // chunk section
+                    } catch (IndexOutOfBoundsException e) {
+                        this.handleIncompleteRead(frame, consumed, complete, e);
+                        return;
+                    }
+                    consumed = frame.readerIndex();
+                    this.failedSectionReadLength = 0;
+                    this.chunkColumnRemainingSections--;
+                    this.chunkTracker.mergeChunkSection(chunkColumnSection);
+                }
+                consumed = frame.writerIndex(); // Skip the remaining fields
+            } finally {
+                in.skipBytes(consumed);
+                this.chunkColumnRemainingBytes -= consumed;
+                if (this.chunkColumnRemainingBytes == 0) {
+                    this.chunkTracker = null;
+                }
+            }
+        }
+
+        private void handleIncompleteRead(final ByteBuf frame, final int consumed, final boolean complete, final IndexOutOfBoundsException e) {
+            if (complete) {
+                throw new CorruptedFrameException("Chunk column packet is shorter than its contents", e);
+            }
+            this.failedSectionReadLength = frame.writerIndex() - consumed;
+            if (this.failedSectionReadLength > ProtocolConstants.MAX_FRAME_LENGTH) {
+                // Sections aren't length prefixed, so a corrupt section would otherwise be buffered until the whole frame has been received
+                throw new TooLongFrameException("Chunk section exceeds the maximum frame length of " + ProtocolConstants.MAX_FRAME_LENGTH);
+            }
+        }
+
+        private boolean isChunkColumn(final int packetId) {
+            // The packet ids are assigned by the server, so they have to be resolved the same way the protocol does
+            final ProtocolStorage protocolStorage = this.user.get(ProtocolStorage.class);
+            return protocolStorage != null && protocolStorage.findClientboundPacket(packetId) == ClientboundCosmicReachPackets.CHUNK_COLUMN;
+        }
+
+        private static int getVarIntLength(final int value) {
+            int length = 1;
+            for (int remaining = value >>> 7; remaining != 0; remaining >>>= 7) {
+                length++;
+            }
+            return length;
+        }
+
+    }
+
+    public static class Encoder extends MessageToMessageEncoder<ByteBuf> {
+
+        @Override
+        protected void encode(ChannelHandlerContext ctx, ByteBuf msg, List<Object> out) {
+            final int packetId = Types.VAR_INT.readPrimitive(msg);
+            final ByteBuf header = ctx.alloc().buffer(HEADER_LENGTH);
+            header.writeInt(Short.BYTES + msg.readableBytes());
+            header.writeShort(packetId);
+            out.add(header);
+            out.add(msg.retain());
+        }
+
+    }
+
+}
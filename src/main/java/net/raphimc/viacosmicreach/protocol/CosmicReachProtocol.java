@@ -31,9 +31,9 @@ import com.viaversion.viaversion.api.platform.providers.ViaProviders;
 import com.viaversion.viaversion.api.protocol.packet.Direction;
 import com.viaversion.viaversion.api.protocol.packet.PacketWrapper;
 import com.viaversion.viaversion.api.protocol.packet.State;
+import com.viaversion.viaversion.api.protocol.remapper.PacketHandler;
 import com.viaversion.viaversion.api.protocol.remapper.PacketHandlers;
 import com.viaversion.viaversion.api.type.Types;
-import com.viaversion.viaversion.api.type.types.chunk.ChunkType1_20_2;
 import com.viaversion.viaversion.exception.CancelException;
 import com.viaversion.viaversion.exception.InformativeException;
 import com.viaversion.viaversion.libs.gson.JsonObject;
@@ -53,7 +53,6 @@ import net.raphimc.viabedrock.protocol.data.enums.java.PlayerInfoUpdateAction;
 import net.raphimc.viacosmicreach.ClientboundCosmicReachPackets;
 import net.raphimc.viacosmicreach.ServerboundCosmicReachPackets;
 import net.raphimc.viacosmicreach.ViaCosmicReach;
-import net.raphimc.viacosmicreach.api.chunk.CosmicReachChunkSection;
 import net.raphimc.viacosmicreach.api.util.TextUtil;
 import net.raphimc.viacosmicreach.protocol.data.CosmicReachMappingData;
 import net.raphimc.viacosmicreach.protocol.data.ProtocolConstants;
@@ -63,6 +62,7 @@ import net.raphimc.viacosmicreach.protocol.storage.*;
 import net.raphimc.viacosmicreach.protocol.task.ChunkTrackerTickTask;
 import net.raphimc.viacosmicreach.protocol.task.KeepAliveTask;
 import net.raphimc.viacosmicreach.protocol.types.CosmicReachTypes;
+import net.raphimc.viacosmicreach.protocol.types.MinecraftChunkSectionsType;
 import net.raphimc.vialegacy.api.protocol.StatelessTransitionProtocol;
 
 import java.util.*;
@@ -119,7 +119,7 @@ public class CosmicReachProtocol extends StatelessTransitionProtocol<Clientbound
         this.registerClientbound(ClientboundCosmicReachPackets.PLAYER, ClientboundPackets1_21.ADD_ENTITY, wrapper -> {
             final EntityTracker entityTracker = wrapper.user().get(EntityTracker.class);
             final Account account = wrapper.read(CosmicReachTypes.ACCOUNT); // account
-            wrapper.read(CosmicReachTypes.JSON_OBJECT); // player
+            wrapper.read(CosmicReachTypes.JSON_SKIP); // player
             final boolean justJoined = wrapper.read(Types.BOOLEAN); // just joined
 
             if (entityTracker.hasPlayer(account.uniqueId())) {
@@ -217,25 +217,18 @@ public class CosmicReachProtocol extends StatelessTransitionProtocol<Clientbound
         this.registerClientbound(ClientboundCosmicReachPackets.CHUNK_COLUMN, null, wrapper -> {
             wrapper.cancel();
             final ChunkTracker chunkTracker = wrapper.user().get(ChunkTracker.class);
-            wrapper.read(CosmicReachTypes.STRING); // zone id
-            // TODO: Handle other fields
-            final int count = wrapper.read(Types.INT); // chunk count
+            final int count = wrapper.read(CosmicReachTypes.CHUNK_COLUMN_HEADER); // header
             for (int i = 0; i < count; i++) {
-                final int chunkX = wrapper.read(Types.INT); // x
-                final int sectionY = wrapper.read(Types.INT); // y
-                final int chunkZ = wrapper.read(Types.INT); // z
-                final CosmicReachChunkSection chunkSection = wrapper.read(CosmicReachTypes.CHUNK_SECTION); // chunk section
-                chunkTracker.mergeChunkSection(chunkX, sectionY, chunkZ, chunkSection);
+                chunkTracker.mergeChunkSection(wrapper.read(CosmicReachTypes.CHUNK_COLUMN_SECTION)); // chunk section
             }
         });
-        this.registerClientbound(ClientboundCosmicReachPackets.BLOCK_REPLACE, ClientboundPackets1_21.BLOCK_UPDATE, wrapper -> {
+        this.registerClientbound(ClientboundCosmicReachPackets.BLOCK_REPLACE, null, wrapper -> {
+            wrapper.cancel();
             final ChunkTracker chunkTracker = wrapper.user().get(ChunkTracker.class);
             wrapper.read(CosmicReachTypes.STRING); // zone id
             final String blockState = wrapper.read(CosmicReachTypes.STRING); // block state
             final BlockPosition blockPosition = wrapper.read(CosmicReachTypes.BLOCK_POSITION); // position
-
-            wrapper.write(Types.BLOCK_POSITION1_14, blockPosition); // position
-            wrapper.write(Types.VAR_INT, chunkTracker.handleBlockChange(blockPosition, blockState)); // block state
+            chunkTracker.handleBlockChange(blockPosition, blockState); // Sent batched with the next chunk tracker tick
         });
         this.registerClientbound(ClientboundCosmicReachPackets.PLAY_SOUND_2D, ClientboundPackets1_21.SOUND, wrapper -> {
             wrapper.cancel();
@@ -376,6 +369,15 @@ public class CosmicReachProtocol extends StatelessTransitionProtocol<Clientbound
             wrapper.cancel();
             wrapper.user().getProtocolInfo().setClientState(State.PLAY);
         });
+        final PacketHandler clientInformationHandler = wrapper -> {
+            wrapper.cancel();
+            wrapper.read(Types.STRING); // locale
+            final byte viewDistance = wrapper.read(Types.BYTE); // view distance
+
+            wrapper.user().get(ChunkTracker.class).setViewDistance(viewDistance);
+        };
+        this.registerServerboundTransition(ServerboundConfigurationPackets1_20_5.CLIENT_INFORMATION, null, clientInformationHandler);
+        this.registerServerbound(ServerboundPackets1_20_5.CLIENT_INFORMATION, null, clientInformationHandler);
         this.registerServerbound(ServerboundPackets1_20_5.CONFIGURATION_ACKNOWLEDGED, null, wrapper -> {
             wrapper.cancel();
             wrapper.user().getProtocolInfo().setClientState(State.CONFIGURATION);
@@ -466,12 +468,7 @@ public class CosmicReachProtocol extends StatelessTransitionProtocol<Clientbound
     protected void onMappingDataLoaded() {
         super.onMappingDataLoaded();
 
-        final CompoundTag registries = MAPPINGS.getMinecraftRegistries();
-        final CompoundTag dimensionRegistry = registries.getCompoundTag("minecraft:dimension_type");
-        final CompoundTag biomeRegistry = registries.getCompoundTag("minecraft:worldgen/biome");
-        final CompoundTag dimensionTag = dimensionRegistry.getCompoundTag("minecraft:overworld");
-        final int worldHeight = dimensionTag.getNumberTag("height").asInt();
-        CosmicReachTypes.MINECRAFT_CHUNK = new ChunkType1_20_2(worldHeight >> 4, com.viaversion.viaversion.util.MathUtil.ceilLog2(MAPPINGS.getMinecraftBlockStates().size()), com.viaversion.viaversion.util.MathUtil.ceilLog2(biomeRegistry.size()));
+        CosmicReachTypes.MINECRAFT_CHUNK_SECTIONS = new MinecraftChunkSectionsType(MAPPINGS.getMinecraftPlainsBiomeId());
     }
 
     @Override
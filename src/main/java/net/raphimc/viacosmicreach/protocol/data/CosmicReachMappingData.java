@@ -22,8 +22,6 @@ import com.viaversion.nbt.limiter.TagLimiter;
 import com.viaversion.nbt.tag.CompoundTag;
 import com.viaversion.viaversion.api.Via;
 import com.viaversion.viaversion.api.data.MappingDataBase;
-import com.viaversion.viaversion.libs.fastutil.ints.Int2IntMap;
-import com.viaversion.viaversion.libs.fastutil.ints.Int2IntOpenHashMap;
 import com.viaversion.viaversion.libs.fastutil.objects.Object2IntMap;
 import com.viaversion.viaversion.libs.fastutil.objects.Object2IntOpenHashMap;
 import com.viaversion.viaversion.libs.gson.JsonArray;
@@ -41,18 +39,27 @@ import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.zip.GZIPInputStream;
 
 public class CosmicReachMappingData extends MappingDataBase {
 
+    private static final AtomicInteger LOAD_COUNTER = new AtomicInteger();
+    private static final int MAX_CACHED_UNKNOWN_BLOCK_STATE_STRINGS = 4096;
+
+    private int version;
     private CompoundTag minecraftRegistries;
     private CompoundTag minecraftTags;
     private Object2IntMap<BlockState> minecraftBlockStates;
     private Object2IntMap<CosmicReachBlockState> cosmicReachBlockStates;
-    private Int2IntMap cosmicReachToMinecraftBlockStates;
+    private Map<String, Integer> cosmicReachBlockStateIdCache;
+    private int cosmicReachAirBlockStateId;
+    private int[] cosmicReachToMinecraftBlockStates;
     private int minecraftPlainsBiomeId;
 
     public CosmicReachMappingData() {
@@ -64,6 +71,7 @@ public class CosmicReachMappingData extends MappingDataBase {
         if (Via.getManager().isDebug()) {
             this.getLogger().info("Loading " + this.unmappedVersion + " -> " + this.mappedVersion + " mappings...");
         }
+        this.version = LOAD_COUNTER.incrementAndGet();
 
         final JsonObject viaMappingJson = this.readJson("minecraft/via_mappings.json");
         this.minecraftRegistries = this.readNBT("minecraft/registries.nbt");
@@ -83,10 +91,14 @@ public class CosmicReachMappingData extends MappingDataBase {
         final JsonArray cosmicReachBlockStatesJson = this.readJson("cosmicreach/blockstates.json", JsonArray.class);
         this.cosmicReachBlockStates = new Object2IntOpenHashMap<>(cosmicReachBlockStatesJson.size());
         this.cosmicReachBlockStates.defaultReturnValue(-1);
+        this.cosmicReachBlockStateIdCache = new ConcurrentHashMap<>(cosmicReachBlockStatesJson.size() * 2);
         for (int i = 0; i < cosmicReachBlockStatesJson.size(); i++) {
-            final CosmicReachBlockState cosmicReachBlockState = CosmicReachBlockState.fromString(cosmicReachBlockStatesJson.get(i).getAsString());
+            final String cosmicReachBlockStateString = cosmicReachBlockStatesJson.get(i).getAsString();
+            final CosmicReachBlockState cosmicReachBlockState = CosmicReachBlockState.fromString(cosmicReachBlockStateString);
             this.cosmicReachBlockStates.put(cosmicReachBlockState, i);
+            this.cosmicReachBlockStateIdCache.put(cosmicReachBlockStateString, i);
         }
+        this.cosmicReachAirBlockStateId = this.cosmicReachBlockStates.getInt(CosmicReachBlockState.AIR);
         final JsonArray minecraftBlockStatesJson = viaMappingJson.getAsJsonArray("blockstates");
         this.minecraftBlockStates = new Object2IntOpenHashMap<>(minecraftBlockStatesJson.size());
         this.minecraftBlockStates.defaultReturnValue(-1);
@@ -95,8 +107,8 @@ public class CosmicReachMappingData extends MappingDataBase {
             this.minecraftBlockStates.put(blockState, i);
         }
         final JsonObject cosmicReachToMinecraftBlockStateMappingsJson = this.readJson("custom/blockstate_mappings.json");
-        this.cosmicReachToMinecraftBlockStates = new Int2IntOpenHashMap(cosmicReachToMinecraftBlockStateMappingsJson.size());
-        this.cosmicReachToMinecraftBlockStates.defaultReturnValue(-1);
+        this.cosmicReachToMinecraftBlockStates = new int[this.cosmicReachBlockStates.size()];
+        Arrays.fill(this.cosmicReachToMinecraftBlockStates, -1);
         for (Map.Entry<String, JsonElement> entry : cosmicReachToMinecraftBlockStateMappingsJson.entrySet()) {
             final CosmicReachBlockState cosmicReachBlockState = CosmicReachBlockState.fromString(entry.getKey());
             if (!this.cosmicReachBlockStates.containsKey(cosmicReachBlockState)) {
@@ -109,20 +121,34 @@ public class CosmicReachMappingData extends MappingDataBase {
             if (!this.minecraftBlockStates.containsKey(minecraftBlockState)) {
                 throw new RuntimeException("Unknown minecraft block state: " + entry.getValue().getAsString());
             }
-            if (this.cosmicReachToMinecraftBlockStates.put(this.cosmicReachBlockStates.getInt(cosmicReachBlockState), this.minecraftBlockStates.getInt(minecraftBlockState)) != -1) {
+            final int cosmicReachBlockStateId = this.cosmicReachBlockStates.getInt(cosmicReachBlockState);
+            if (this.cosmicReachToMinecraftBlockStates[cosmicReachBlockStateId] != -1) {
                 throw new RuntimeException("Duplicate cosmic reach -> minecraft block state mapping for " + entry.getKey());
             }
+            this.cosmicReachToMinecraftBlockStates[cosmicReachBlockStateId] = this.minecraftBlockStates.getInt(minecraftBlockState);
         }
-        /*for (CosmicReachBlockState cosmicReachBlockState : cosmicReachBlockStates) { // TODO: Add this once all mappings are done
-            if (!this.cosmicReachToMinecraftBlockStates.containsKey(cosmicReachBlockState)) {
-                throw new RuntimeException("Missing cosmic reach -> minecraft block state mapping for " + cosmicReachBlockState);
+        int missingBlockStateMappings = 0;
+        for (int i = 0; i < this.cosmicReachToMinecraftBlockStates.length; i++) {
+            if (this.cosmicReachToMinecraftBlockStates[i] == -1) {
+                this.cosmicReachToMinecraftBlockStates[i] = 1; // TODO: Throw an exception instead once all mappings are done
+                missingBlockStateMappings++;
             }
-        }*/
+        }
+        if (missingBlockStateMappings != 0) {
+            this.getLogger().warning("Missing " + missingBlockStateMappings + " cosmic reach -> minecraft block state mappings");
+        }
 
         final CompoundTag biomeRegistry = CosmicReachProtocol.MAPPINGS.getMinecraftRegistries().getCompoundTag("minecraft:worldgen/biome");
         this.minecraftPlainsBiomeId = RegistryUtil.getRegistryIndex(biomeRegistry, biomeRegistry.getCompoundTag("minecraft:plains"));
     }
 
+    /**
+     * @return An id which changes every time the mappings are (re)loaded. Used to invalidate data derived from older mappings.
+     */
+    public int getVersion() {
+        return this.version;
+    }
+
     public CompoundTag getMinecraftRegistries() {
         return this.minecraftRegistries;
     }
@@ -139,7 +165,33 @@ public class CosmicReachMappingData extends MappingDataBase {
         return this.cosmicReachBlockStates;
     }
 
-    public Int2IntMap getCosmicReachToMinecraftBlockStates() {
+    /**
+     * Resolves a block state string as sent by the server to its id. Strings which are not in the canonical form (e.g. different property order) are parsed once and cached afterwards.
+     *
+     * @param blockState The block state string
+     * @return The block state id or -1 if the block state is unknown
+     */
+    public int getCosmicReachBlockStateId(final String blockState) {
+        final Integer cachedBlockStateId = this.cosmicReachBlockStateIdCache.get(blockState);
+        if (cachedBlockStateId != null) {
+            return cachedBlockStateId;
+        }
+
+        final int blockStateId = this.cosmicReachBlockStates.getInt(CosmicReachBlockState.fromString(blockState));
+        if (this.cosmicReachBlockStateIdCache.size() < this.cosmicReachBlockStates.size() + MAX_CACHED_UNKNOWN_BLOCK_STATE_STRINGS) {
+            this.cosmicReachBlockStateIdCache.put(blockState, blockStateId);
+        }
+        return blockStateId;
+    }
+
+    public int getCosmicReachAirBlockStateId() {
+        return this.cosmicReachAirBlockStateId;
+    }
+
+    /**
+     * @return A table indexed by cosmic reach block state id. Unmapped block states are already resolved to their fallback block state.
+     */
+    public int[] getCosmicReachToMinecraftBlockStates() {
         return this.cosmicReachToMinecraftBlockStates;
     }
 
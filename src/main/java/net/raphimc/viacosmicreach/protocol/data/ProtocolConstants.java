@@ -25,6 +25,17 @@ public class ProtocolConstants {
     public static final ProtocolVersion MINECRAFT_VERSION = ProtocolVersion.v1_21;
     public static final TextComponentCodec MINECRAFT_TEXT_COMPONENT_SERIALIZER = TextComponentCodec.V1_20_5;
     public static final int MINECRAFT_VIEW_DISTANCE = 32;
+    public static final int CHUNK_UNLOAD_DISTANCE_MARGIN = 2;
+    public static final long CHUNK_SEND_TIME_BUDGET_NANOS = Long.getLong("viacosmicreach.chunkSendTimeBudgetMillis", 10L) * 1_000_000L;
+    public static final int CHUNK_SEND_BYTE_BUDGET = Integer.getInteger("viacosmicreach.chunkSendByteBudget", 2 * 1024 * 1024);
+    public static final int CHUNK_REMAP_THREADS = Integer.getInteger("viacosmicreach.chunkRemapThreads", 0);
+    public static final int CHUNK_REMAP_MAX_PENDING = Integer.getInteger("viacosmicreach.chunkRemapMaxPending", 64);
+    public static final int SECTION_BLOCKS_UPDATE_MAX_CHANGES = Integer.getInteger("viacosmicreach.sectionBlocksUpdateMaxChanges", 1024);
+    public static final int MAX_FRAME_LENGTH = Integer.getInteger("viacosmicreach.maxFrameLength", 32 * 1024 * 1024);
+    public static final boolean CACHE_SHORT_STRINGS = !Boolean.getBoolean("viacosmicreach.disableStringCache");
+    public static final int COLD_CHUNK_DISTANCE = Integer.getInteger("viacosmicreach.coldChunkDistance", 8);
+    public static final long COLD_CHUNK_AGE_MILLIS = Long.getLong("viacosmicreach.coldChunkAgeMillis", 30_000L);
+    public static final long REMAPPED_CHUNK_SECTION_CACHE_SIZE = Long.getLong("viacosmicreach.remappedChunkSectionCacheSize", 64L * 1024 * 1024);
 
     public static final int WORLD_MIN_Y = -1024;
     public static final int WORLD_MAX_Y = 1024;
@@ -0,0 +1,30 @@
+/*
+ * This file is part of ViaCosmicReach - https://github.com/RaphiMC/ViaCosmicReach
+ * Copyright (C) 2024-2024 RK_01/RaphiMC and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.raphimc.viacosmicreach.protocol.model;
+
+import net.raphimc.viacosmicreach.api.chunk.BlockStateStorage;
+
+/**
+ * An immutable copy of the data of a chunk section which is required to remap it. Allows remapping off the event loop while the original section is modified.
+ *
+ * @param blockStates A copy of the block state storage of the section
+ * @param blockLight  The block light nibble array of the section or null if the section has no block light. Light arrays are never modified, so they don't have to be copied.
+ * @param contentHash The content hash of the section (See {@link net.raphimc.viacosmicreach.api.chunk.CosmicReachChunkSection#contentHash()})
+ */
+public record ChunkSectionSnapshot(BlockStateStorage blockStates, byte[] blockLight, byte[] contentHash) {
+}
@@ -0,0 +1,29 @@
+/*
+ * This file is part of ViaCosmicReach - https://github.com/RaphiMC/ViaCosmicReach
+ * Copyright (C) 2024-2024 RK_01/RaphiMC and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.raphimc.viacosmicreach.protocol.model;
+
+/**
+ * A chunk section which has already been translated and serialized into the Minecraft chunk data format.
+ * Uniform light arrays are shared between sections (See {@link net.raphimc.viacosmicreach.api.util.LightUtil}) and must not be modified.
+ *
+ * @param data       The serialized section (non air block count, block state and biome containers)
+ * @param skyLight   The sky light nibble array or null if not present
+ * @param blockLight The block light nibble array or null if the section has no block light
+ */
+public record RemappedChunkSection(byte[] data, byte[] skyLight, byte[] blockLight) {
+}
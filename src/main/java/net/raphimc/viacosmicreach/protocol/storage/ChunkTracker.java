@@ -20,45 +20,67 @@ package net.raphimc.viacosmicreach.protocol.storage;
 import com.viaversion.nbt.tag.CompoundTag;
 import com.viaversion.viaversion.api.connection.StoredObject;
 import com.viaversion.viaversion.api.connection.UserConnection;
+import com.viaversion.viaversion.api.minecraft.BlockChangeRecord;
+import com.viaversion.viaversion.api.minecraft.BlockChangeRecord1_16_2;
 import com.viaversion.viaversion.api.minecraft.BlockPosition;
 import com.viaversion.viaversion.api.minecraft.ChunkPosition;
-import com.viaversion.viaversion.api.minecraft.chunks.*;
 import com.viaversion.viaversion.api.protocol.packet.PacketWrapper;
 import com.viaversion.viaversion.api.type.Types;
+import com.viaversion.viaversion.libs.fastutil.ints.Int2IntMap;
+import com.viaversion.viaversion.libs.fastutil.ints.Int2IntOpenHashMap;
 import com.viaversion.viaversion.libs.fastutil.ints.Int2ObjectMap;
 import com.viaversion.viaversion.libs.fastutil.ints.Int2ObjectOpenHashMap;
 import com.viaversion.viaversion.protocols.v1_20_5to1_21.packet.ClientboundPackets1_21;
-import finalforeach.cosmicreach.savelib.blockdata.IBlockData;
-import finalforeach.cosmicreach.savelib.lightdata.blocklight.IBlockLightData;
-import finalforeach.cosmicreach.savelib.lightdata.skylight.ISkylightData;
+import com.viaversion.viaversion.util.MathUtil;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.EventLoop;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import net.raphimc.viacosmicreach.ViaCosmicReach;
+import net.raphimc.viacosmicreach.api.chunk.BlockStateStorage;
 import net.raphimc.viacosmicreach.api.chunk.CosmicReachChunk;
 import net.raphimc.viacosmicreach.api.chunk.CosmicReachChunkSection;
-import net.raphimc.viacosmicreach.api.model.CosmicReachBlockState;
+import net.raphimc.viacosmicreach.api.util.ChunkCompressionUtil;
+import net.raphimc.viacosmicreach.api.util.LightUtil;
+import net.raphimc.viacosmicreach.api.util.PaletteUtil;
 import net.raphimc.viacosmicreach.protocol.CosmicReachProtocol;
 import net.raphimc.viacosmicreach.protocol.data.ProtocolConstants;
+import net.raphimc.viacosmicreach.protocol.model.ChunkColumnSection;
+import net.raphimc.viacosmicreach.protocol.model.ChunkSectionSnapshot;
+import net.raphimc.viacosmicreach.protocol.model.RemappedChunkSection;
 import net.raphimc.viacosmicreach.protocol.types.CosmicReachTypes;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Level;
 
 public class ChunkTracker extends StoredObject {
 
-    private static final byte[] FULL_LIGHT = new byte[2048];
-
-    static {
-        Arrays.fill(FULL_LIGHT, (byte) 0xFF);
-    }
+    private static final ExecutorService CHUNK_REMAP_EXECUTOR = ProtocolConstants.CHUNK_REMAP_THREADS > 0 ? Executors.newFixedThreadPool(ProtocolConstants.CHUNK_REMAP_THREADS, new DefaultThreadFactory("ViaCosmicReach Chunk Remapper", true)) : null;
 
     private final Map<Long, CosmicReachChunk> chunks = new HashMap<>();
+    private final Map<Long, byte[]> compressedChunks = new HashMap<>();
+    private final Map<Long, Long> chunkAccessTimes = new HashMap<>();
     private final Set<Long> dirtyChunks = new HashSet<>();
+    private final Map<Long, Int2ObjectMap<RemappedChunkSection>> remappedChunkSections = new HashMap<>();
+    private final Map<Long, Long> chunkVersions = new HashMap<>();
+    private final Queue<PendingChunk> pendingChunks = new ArrayDeque<>();
+    private final Map<Long, Int2IntMap> pendingBlockChanges = new HashMap<>();
+    private long chunkVersionCounter;
+    private long lastChunkCompression;
+
+    private int viewDistance = ProtocolConstants.MINECRAFT_VIEW_DISTANCE;
+    private Integer centerChunkX;
+    private Integer centerChunkZ;
 
     public ChunkTracker(final UserConnection user) {
         super(user);
     }
 
     public CosmicReachChunk getChunk(final int chunkX, final int chunkZ) {
-        return this.chunks.get(ChunkPosition.chunkKey(chunkX, chunkZ));
+        return this.getChunk(ChunkPosition.chunkKey(chunkX, chunkZ));
     }
 
     public CosmicReachChunkSection getChunkSection(final int chunkX, final int subChunkY, final int chunkZ) {
@@ -71,170 +93,577 @@ public class ChunkTracker extends StoredObject {
         return this.getChunkSection(blockPosition.x() >> 4, blockPosition.y() >> 4, blockPosition.z() >> 4);
     }
 
+    public void mergeChunkSection(final ChunkColumnSection chunkColumnSection) {
+        this.mergeChunkSection(chunkColumnSection.chunkX(), chunkColumnSection.sectionY(), chunkColumnSection.chunkZ(), chunkColumnSection.chunkSection());
+    }
+
     public void mergeChunkSection(final int chunkX, final int sectionY, final int chunkZ, final CosmicReachChunkSection chunkSection) {
         final long key = ChunkPosition.chunkKey(chunkX, chunkZ);
-        final CosmicReachChunk chunk = this.chunks.computeIfAbsent(key, k -> new CosmicReachChunk(chunkX, chunkZ, new Int2ObjectOpenHashMap<>()));
-        chunk.sections().put(sectionY, chunkSection);
+        this.sendBlockChanges(getSectionPosition(chunkX, sectionY, chunkZ)); // The client has to know about previous changes before the section is diffed
+        CosmicReachChunk chunk = this.getChunk(key);
+        if (chunk == null) {
+            chunk = new CosmicReachChunk(chunkX, chunkZ, new Int2ObjectOpenHashMap<>());
+            this.chunks.put(key, chunk);
+            this.chunkAccessTimes.put(key, System.currentTimeMillis());
+        }
+        final CosmicReachChunkSection previousChunkSection = chunk.sections().put(sectionY, chunkSection);
+        this.invalidateRemappedChunkSection(key, sectionY);
+
+        // If the client already has the column, only the difference to the previous section has to be sent
+        final boolean sentToClient = !this.dirtyChunks.contains(key) && this.pendingChunks.stream().noneMatch(pendingChunk -> pendingChunk.chunkKey() == key);
+        if (previousChunkSection != null && sentToClient && this.sendChunkSectionChanges(chunkX, sectionY, chunkZ, previousChunkSection, chunkSection)) {
+            return;
+        }
         this.dirtyChunks.add(key);
     }
 
-    public int handleBlockChange(final BlockPosition blockPosition, final String blockState) {
+    public void updateCenter(final int chunkX, final int chunkZ) {
+        this.centerChunkX = chunkX;
+        this.centerChunkZ = chunkZ;
+        this.unloadChunksOutsideViewDistance();
+    }
+
+    public void setViewDistance(final int viewDistance) {
+        final int newViewDistance = Math.max(2, Math.min(viewDistance, ProtocolConstants.MINECRAFT_VIEW_DISTANCE));
+        if (newViewDistance != this.viewDistance) {
+            this.viewDistance = newViewDistance;
+            this.unloadChunksOutsideViewDistance();
+        }
+    }
+
+    /**
+     * Applies a block change to the stored chunk section. The change is sent to the client with the next tick, together with all other changes to the same section.
+     */
+    public void handleBlockChange(final BlockPosition blockPosition, final String blockState) {
         final CosmicReachChunkSection chunkSection = this.getChunkSection(blockPosition);
         if (chunkSection == null) {
-            return 0;
+            return;
         }
 
-        final CosmicReachBlockState cosmicReachBlockState = CosmicReachBlockState.fromString(blockState);
-        int blockStateId = CosmicReachProtocol.MAPPINGS.getCosmicReachBlockStates().getInt(cosmicReachBlockState);
+        int blockStateId = CosmicReachProtocol.MAPPINGS.getCosmicReachBlockStateId(blockState);
         if (blockStateId == -1) {
             ViaCosmicReach.getPlatform().getLogger().log(Level.WARNING, "Missing cosmic reach block state mapping for " + blockState);
-            blockStateId = CosmicReachProtocol.MAPPINGS.getCosmicReachBlockStates().getInt(CosmicReachBlockState.AIR);
+            blockStateId = CosmicReachProtocol.MAPPINGS.getCosmicReachAirBlockStateId();
         }
-        chunkSection.blockData().setBlockValue(blockStateId, blockPosition.x() & 15, blockPosition.y() & 15, blockPosition.z() & 15);
-
-        final int minecraftBlockState = CosmicReachProtocol.MAPPINGS.getCosmicReachToMinecraftBlockStates().get(blockStateId);
-        if (minecraftBlockState != -1) {
-            return minecraftBlockState;
-        } else {
-            ViaCosmicReach.getPlatform().getLogger().log(Level.WARNING, "Missing cosmic reach -> minecraft block state mapping for " + blockState);
-            return 1;
+        chunkSection.blockStates().set(blockPosition.x() & 15, blockPosition.y() & 15, blockPosition.z() & 15, blockStateId);
+        if (chunkSection.contentHash() != null) {
+            // The section no longer matches the data it was read from, so it can't be looked up in the shared cache anymore
+            this.getChunk(blockPosition.x() >> 4, blockPosition.z() >> 4).sections().put(blockPosition.y() >> 4, new CosmicReachChunkSection(chunkSection.blockStates(), chunkSection.skyLight(), chunkSection.blockLight(), chunkSection.blockEntities(), null));
         }
+        this.invalidateRemappedChunkSection(ChunkPosition.chunkKey(blockPosition.x() >> 4, blockPosition.z() >> 4), blockPosition.y() >> 4);
+
+        // Repeated changes of the same block overwrite each other
+        final int localPosition = (blockPosition.x() & 15) << 8 | (blockPosition.z() & 15) << 4 | (blockPosition.y() & 15);
+        this.pendingBlockChanges.computeIfAbsent(getSectionPosition(blockPosition.x() >> 4, blockPosition.y() >> 4, blockPosition.z() >> 4), k -> new Int2IntOpenHashMap()).put(localPosition, CosmicReachProtocol.MAPPINGS.getCosmicReachToMinecraftBlockStates()[blockStateId]);
     }
 
     public void tick() {
-        for (Long dirtyChunk : this.dirtyChunks) {
-            final CosmicReachChunk chunk = this.chunks.get(dirtyChunk);
+        this.sendBlockChanges();
+        this.sendRemappedChunks();
+        this.compressColdChunks();
+        if (this.dirtyChunks.isEmpty()) {
+            return;
+        }
+
+        // Send the nearest columns first and leave whatever exceeds the budget for the next tick
+        final PriorityQueue<Long> sendQueue = new PriorityQueue<>(this.dirtyChunks.size(), Comparator.comparingInt(this::getDistanceToCenter));
+        sendQueue.addAll(this.dirtyChunks);
+        final long startTime = System.nanoTime();
+        long sentBytes = 0;
+        while (!sendQueue.isEmpty()) {
+            if (CHUNK_REMAP_EXECUTOR != null && this.pendingChunks.size() >= ProtocolConstants.CHUNK_REMAP_MAX_PENDING) {
+                break;
+            }
+
+            final Long chunkKey = sendQueue.poll();
+            this.dirtyChunks.remove(chunkKey);
+            final CosmicReachChunk chunk = this.getChunk(chunkKey);
             if (chunk == null) {
+                continue;
+            }
+
+            if (CHUNK_REMAP_EXECUTOR != null) {
+                this.remapChunkAsync(chunkKey, chunk);
+            } else {
+                sentBytes += this.sendChunk(chunk, this.remapChunk(chunk));
+            }
+            if (sentBytes >= ProtocolConstants.CHUNK_SEND_BYTE_BUDGET || System.nanoTime() - startTime >= ProtocolConstants.CHUNK_SEND_TIME_BUDGET_NANOS) {
+                break;
+            }
+        }
+    }
+
+    private CosmicReachChunk getChunk(final long chunkKey) {
+        CosmicReachChunk chunk = this.chunks.get(chunkKey);
+        if (chunk == null) {
+            final byte[] compressedChunk = this.compressedChunks.remove(chunkKey);
+            if (compressedChunk == null) {
+                return null;
+            }
+            chunk = ChunkCompressionUtil.decompress(compressedChunk);
+            this.chunks.put(chunkKey, chunk);
+        }
+        this.chunkAccessTimes.put(chunkKey, System.currentTimeMillis());
+        return chunk;
+    }
+
+    /**
+     * Compresses chunks which are far away from the player and haven't been accessed for a while. They are decompressed again once they are accessed.
+     * Stops once the per tick time budget is used up and continues in the next tick.
+     */
+    private void compressColdChunks() {
+        final long now = System.currentTimeMillis();
+        if (ProtocolConstants.COLD_CHUNK_DISTANCE < 0 || this.centerChunkX == null || this.centerChunkZ == null || now - this.lastChunkCompression < 1000) {
+            return;
+        }
+
+        final long startTime = System.nanoTime();
+        final Iterator<Map.Entry<Long, CosmicReachChunk>> iterator = this.chunks.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<Long, CosmicReachChunk> entry = iterator.next();
+            final long chunkKey = entry.getKey();
+            final CosmicReachChunk chunk = entry.getValue();
+            if (Math.max(Math.abs(chunk.x() - this.centerChunkX), Math.abs(chunk.z() - this.centerChunkZ)) <= ProtocolConstants.COLD_CHUNK_DISTANCE) {
+                continue;
+            }
+            if (now - this.chunkAccessTimes.getOrDefault(chunkKey, 0L) < ProtocolConstants.COLD_CHUNK_AGE_MILLIS) {
+                continue;
+            }
+            if (this.dirtyChunks.contains(chunkKey) || this.pendingChunks.stream().anyMatch(pendingChunk -> pendingChunk.chunkKey() == chunkKey)) {
+                continue;
+            }
+            if (chunk.sections().values().stream().anyMatch(section -> !section.blockEntities().isEmpty())) {
+                continue;
+            }
+
+            iterator.remove();
+            this.compressedChunks.put(chunkKey, ChunkCompressionUtil.compress(chunk));
+            this.remappedChunkSections.remove(chunkKey);
+            if (System.nanoTime() - startTime >= ProtocolConstants.CHUNK_SEND_TIME_BUDGET_NANOS) {
                 return;
             }
-            final Chunk remappedChunk = this.remapChunk(chunk);
+        }
+        this.lastChunkCompression = now;
+    }
 
-            final PacketWrapper wrapper = PacketWrapper.create(ClientboundPackets1_21.LEVEL_CHUNK_WITH_LIGHT, this.user());
-            final BitSet skyLightMask = new BitSet();
-            final BitSet blockLightMask = new BitSet();
-            final BitSet emptySkyLightMask = new BitSet();
-            final BitSet emptyBlockLightMask = new BitSet();
-            final List<byte[]> skyLights = new ArrayList<>();
-            final List<byte[]> blockLights = new ArrayList<>();
-
-            skyLights.add(FULL_LIGHT.clone());
-            skyLightMask.set(0);
-            emptyBlockLightMask.set(0);
-
-            for (int i = 0; i < remappedChunk.getSections().length; i++) {
-                final ChunkSection chunkSection = remappedChunk.getSections()[i];
-                if (chunkSection.hasLight()) {
-                    if (chunkSection.getLight().hasSkyLight()) {
-                        skyLights.add(chunkSection.getLight().getSkyLight());
-                        skyLightMask.set(1 + i);
-                    } else {
-                        //emptySkyLightMask.set(1 + i);
-                    }
-                    if (chunkSection.getLight().hasBlockLight()) {
-                        blockLights.add(chunkSection.getLight().getBlockLight());
-                        blockLightMask.set(1 + i);
+    private int getDistanceToCenter(final long chunkKey) {
+        if (this.centerChunkX == null || this.centerChunkZ == null) {
+            return 0;
+        }
+
+        final int chunkX = (int) chunkKey;
+        final int chunkZ = (int) (chunkKey >> 32);
+        final int dx = chunkX - this.centerChunkX;
+        final int dz = chunkZ - this.centerChunkZ;
+        return dx * dx + dz * dz;
+    }
+
+    /**
+     * @return The approximate size of the sent packet in bytes
+     */
+    private int sendChunk(final CosmicReachChunk chunk, final RemappedChunkSection[] remappedSections) {
+        final PacketWrapper wrapper = PacketWrapper.create(ClientboundPackets1_21.LEVEL_CHUNK_WITH_LIGHT, this.user());
+        final BitSet skyLightMask = new BitSet();
+        final BitSet blockLightMask = new BitSet();
+        final BitSet emptySkyLightMask = new BitSet();
+        final BitSet emptyBlockLightMask = new BitSet();
+        final List<byte[]> skyLights = new ArrayList<>();
+        final List<byte[]> blockLights = new ArrayList<>();
+
+        skyLights.add(LightUtil.FULL_LIGHT);
+        skyLightMask.set(0);
+        emptyBlockLightMask.set(0);
+
+        // The client propagates sky light down from the nearest section above which has data.
+        // Sections which are fully lit and only have fully lit sections above them don't need to be sent.
+        int skyLightSectionCount = 0;
+        for (int i = remappedSections.length - 1; i >= 0; i--) {
+            final RemappedChunkSection remappedSection = remappedSections[i];
+            if (remappedSection != null && remappedSection.skyLight() != null && remappedSection.skyLight() != LightUtil.FULL_LIGHT) {
+                skyLightSectionCount = i + 1;
+                break;
+            }
+        }
+
+        for (int i = 0; i < remappedSections.length; i++) {
+            final RemappedChunkSection remappedSection = remappedSections[i];
+            if (remappedSection != null) {
+                if (remappedSection.skyLight() != null && i < skyLightSectionCount) {
+                    if (remappedSection.skyLight() == LightUtil.EMPTY_LIGHT) {
+                        emptySkyLightMask.set(1 + i);
                     } else {
-                        //emptyBlockLightMask.set(1 + i);
+                        skyLights.add(remappedSection.skyLight());
+                        skyLightMask.set(1 + i);
                     }
+                }
+                if (remappedSection.blockLight() != null) {
+                    blockLights.add(remappedSection.blockLight());
+                    blockLightMask.set(1 + i);
                 } else {
-                    //emptySkyLightMask.set(1 + i);
-                    //emptyBlockLightMask.set(1 + i);
+                    emptyBlockLightMask.set(1 + i);
+                }
+            } else {
+                emptyBlockLightMask.set(1 + i);
+            }
+        }
+
+        skyLights.add(LightUtil.FULL_LIGHT);
+        skyLightMask.set(remappedSections.length + 1);
+        emptyBlockLightMask.set(remappedSections.length + 1);
+
+        wrapper.write(Types.INT, chunk.x()); // chunk x
+        wrapper.write(Types.INT, chunk.z()); // chunk z
+        wrapper.write(Types.COMPOUND_TAG, new CompoundTag()); // heightmaps
+        wrapper.write(CosmicReachTypes.MINECRAFT_CHUNK_SECTIONS, remappedSections); // chunk data
+        wrapper.write(Types.VAR_INT, 0); // block entities length
+        wrapper.write(Types.LONG_ARRAY_PRIMITIVE, skyLightMask.toLongArray()); // sky light mask
+        wrapper.write(Types.LONG_ARRAY_PRIMITIVE, blockLightMask.toLongArray()); // block light mask
+        wrapper.write(Types.LONG_ARRAY_PRIMITIVE, emptySkyLightMask.toLongArray()); // empty sky light mask
+        wrapper.write(Types.LONG_ARRAY_PRIMITIVE, emptyBlockLightMask.toLongArray()); // empty block light mask
+        wrapper.write(Types.VAR_INT, skyLights.size()); // sky light length
+        for (byte[] skyLight : skyLights) {
+            wrapper.write(Types.BYTE_ARRAY_PRIMITIVE, skyLight); // sky light
+        }
+        wrapper.write(Types.VAR_INT, blockLights.size()); // block light length
+        for (byte[] blockLight : blockLights) {
+            wrapper.write(Types.BYTE_ARRAY_PRIMITIVE, blockLight); // block light
+        }
+        wrapper.send(CosmicReachProtocol.class);
+
+        int size = (skyLights.size() + blockLights.size()) * LightUtil.LIGHT_ARRAY_SIZE;
+        for (RemappedChunkSection remappedSection : remappedSections) {
+            if (remappedSection != null) {
+                size += remappedSection.data().length;
+            }
+        }
+        return size;
+    }
+
+    private void unloadChunksOutsideViewDistance() {
+        if (this.centerChunkX == null || this.centerChunkZ == null) {
+            return;
+        }
+
+        final int unloadDistance = this.viewDistance + ProtocolConstants.CHUNK_UNLOAD_DISTANCE_MARGIN;
+        final Set<Long> chunkKeys = new HashSet<>(this.chunks.keySet());
+        chunkKeys.addAll(this.compressedChunks.keySet());
+        for (long chunkKey : chunkKeys) {
+            final int chunkX = (int) chunkKey;
+            final int chunkZ = (int) (chunkKey >> 32);
+            if (Math.max(Math.abs(chunkX - this.centerChunkX), Math.abs(chunkZ - this.centerChunkZ)) <= unloadDistance) {
+                continue;
+            }
+
+            this.chunks.remove(chunkKey);
+            this.compressedChunks.remove(chunkKey);
+            this.chunkAccessTimes.remove(chunkKey);
+            this.dirtyChunks.remove(chunkKey);
+            this.remappedChunkSections.remove(chunkKey);
+            this.chunkVersions.remove(chunkKey);
+
+            final PacketWrapper forgetLevelChunk = PacketWrapper.create(ClientboundPackets1_21.FORGET_LEVEL_CHUNK, this.user());
+            forgetLevelChunk.write(Types.INT, chunkZ); // chunk z
+            forgetLevelChunk.write(Types.INT, chunkX); // chunk x
+            forgetLevelChunk.send(CosmicReachProtocol.class);
+        }
+    }
+
+    /**
+     * @return true if the changes were sent, false if the whole column has to be resent
+     */
+    private boolean sendChunkSectionChanges(final int chunkX, final int sectionY, final int chunkZ, final CosmicReachChunkSection previousChunkSection, final CosmicReachChunkSection chunkSection) {
+        if (previousChunkSection.contentHash() != null && Arrays.equals(previousChunkSection.contentHash(), chunkSection.contentHash())) {
+            return true;
+        }
+        final int sectionIdx = sectionY - (ProtocolConstants.WORLD_MIN_Y >> 4);
+        if (sectionIdx < 0 || sectionIdx >= ProtocolConstants.WORLD_HEIGHT >> 4) {
+            return true;
+        }
+
+        final int[] blockStateMappings = CosmicReachProtocol.MAPPINGS.getCosmicReachToMinecraftBlockStates();
+        final List<BlockChangeRecord> blockChanges = new ArrayList<>();
+        for (int idx = 0; idx < BlockStateStorage.SIZE; idx++) {
+            final int previousBlockState = blockStateMappings[previousChunkSection.blockStates().get(idx)];
+            final int blockState = blockStateMappings[chunkSection.blockStates().get(idx)];
+            if (previousBlockState != blockState) {
+                if (blockChanges.size() >= ProtocolConstants.SECTION_BLOCKS_UPDATE_MAX_CHANGES) {
+                    return false;
                 }
+                blockChanges.add(new BlockChangeRecord1_16_2(idx & 15, idx >> 8, (idx >> 4) & 15, blockState));
             }
+        }
 
-            skyLights.add(FULL_LIGHT.clone());
-            skyLightMask.set(remappedChunk.getSections().length + 1);
-            emptyBlockLightMask.set(remappedChunk.getSections().length + 1);
+        final RemappedChunkSection remappedSection = remapChunkSection(chunkSection);
+        this.remappedChunkSections.computeIfAbsent(ChunkPosition.chunkKey(chunkX, chunkZ), k -> new Int2ObjectOpenHashMap<>()).put(sectionY, remappedSection);
 
-            wrapper.write(CosmicReachTypes.MINECRAFT_CHUNK, remappedChunk); // chunk
-            wrapper.write(Types.LONG_ARRAY_PRIMITIVE, skyLightMask.toLongArray()); // sky light mask
-            wrapper.write(Types.LONG_ARRAY_PRIMITIVE, blockLightMask.toLongArray()); // block light mask
-            wrapper.write(Types.LONG_ARRAY_PRIMITIVE, emptySkyLightMask.toLongArray()); // empty sky light mask
-            wrapper.write(Types.LONG_ARRAY_PRIMITIVE, emptyBlockLightMask.toLongArray()); // empty block light mask
-            wrapper.write(Types.VAR_INT, skyLights.size()); // sky light length
-            for (byte[] skyLight : skyLights) {
-                wrapper.write(Types.BYTE_ARRAY_PRIMITIVE, skyLight); // sky light
+        if (!blockChanges.isEmpty()) {
+            this.sendSectionBlocksUpdate(chunkX, sectionY, chunkZ, blockChanges.toArray(new BlockChangeRecord[0]));
+        }
+        if (!Arrays.equals(previousChunkSection.blockLight(), chunkSection.blockLight())) { // Block light is passed through unchanged by the remapping
+            final BitSet blockLightMask = new BitSet();
+            final BitSet emptyBlockLightMask = new BitSet();
+            if (remappedSection.blockLight() != null) {
+                blockLightMask.set(1 + sectionIdx);
+            } else {
+                emptyBlockLightMask.set(1 + sectionIdx);
             }
-            wrapper.write(Types.VAR_INT, blockLights.size()); // block light length
-            for (byte[] blockLight : blockLights) {
-                wrapper.write(Types.BYTE_ARRAY_PRIMITIVE, blockLight); // block light
+
+            final PacketWrapper lightUpdate = PacketWrapper.create(ClientboundPackets1_21.LIGHT_UPDATE, this.user());
+            lightUpdate.write(Types.VAR_INT, chunkX); // chunk x
+            lightUpdate.write(Types.VAR_INT, chunkZ); // chunk z
+            lightUpdate.write(Types.LONG_ARRAY_PRIMITIVE, new long[0]); // sky light mask
+            lightUpdate.write(Types.LONG_ARRAY_PRIMITIVE, blockLightMask.toLongArray()); // block light mask
+            lightUpdate.write(Types.LONG_ARRAY_PRIMITIVE, new long[0]); // empty sky light mask
+            lightUpdate.write(Types.LONG_ARRAY_PRIMITIVE, emptyBlockLightMask.toLongArray()); // empty block light mask
+            lightUpdate.write(Types.VAR_INT, 0); // sky light length
+            if (remappedSection.blockLight() != null) {
+                lightUpdate.write(Types.VAR_INT, 1); // block light length
+                lightUpdate.write(Types.BYTE_ARRAY_PRIMITIVE, remappedSection.blockLight()); // block light
+            } else {
+                lightUpdate.write(Types.VAR_INT, 0); // block light length
             }
-            wrapper.send(CosmicReachProtocol.class);
+            lightUpdate.send(CosmicReachProtocol.class);
+        }
+        return true;
+    }
+
+    private void sendBlockChanges() {
+        if (this.pendingBlockChanges.isEmpty()) {
+            return;
+        }
+
+        for (long sectionPosition : this.pendingBlockChanges.keySet().toArray(new Long[0])) {
+            this.sendBlockChanges(sectionPosition);
         }
-        this.dirtyChunks.clear();
     }
 
-    private Chunk remapChunk(final CosmicReachChunk chunk) {
-        final int airId = CosmicReachProtocol.MAPPINGS.getCosmicReachBlockStates().getInt(CosmicReachBlockState.AIR);
-        final Chunk remappedChunk = new Chunk1_18(chunk.x(), chunk.z(), new ChunkSection[ProtocolConstants.WORLD_HEIGHT >> 4], new CompoundTag(), new ArrayList<>());
+    private void sendBlockChanges(final long sectionPosition) {
+        final Int2IntMap blockChanges = this.pendingBlockChanges.remove(sectionPosition);
+        if (blockChanges == null) {
+            return;
+        }
+
+        final int chunkX = (int) (sectionPosition >> 42);
+        final int sectionY = (int) (sectionPosition << 44 >> 44);
+        final int chunkZ = (int) (sectionPosition << 22 >> 42);
+        final long chunkKey = ChunkPosition.chunkKey(chunkX, chunkZ);
+        if ((!this.chunks.containsKey(chunkKey) && !this.compressedChunks.containsKey(chunkKey)) || this.dirtyChunks.contains(chunkKey) || this.pendingChunks.stream().anyMatch(pendingChunk -> pendingChunk.chunkKey() == chunkKey)) {
+            return; // The changes are part of the column which is sent anyway
+        }
 
+        if (blockChanges.size() == 1) {
+            final Int2IntMap.Entry entry = blockChanges.int2IntEntrySet().iterator().next();
+            final int localPosition = entry.getIntKey();
+            final PacketWrapper blockUpdate = PacketWrapper.create(ClientboundPackets1_21.BLOCK_UPDATE, this.user());
+            blockUpdate.write(Types.BLOCK_POSITION1_14, new BlockPosition(chunkX << 4 | localPosition >> 8, sectionY << 4 | (localPosition & 15), chunkZ << 4 | ((localPosition >> 4) & 15))); // position
+            blockUpdate.write(Types.VAR_INT, entry.getIntValue()); // block state
+            blockUpdate.send(CosmicReachProtocol.class);
+        } else {
+            final BlockChangeRecord[] blockChangeRecords = new BlockChangeRecord[blockChanges.size()];
+            int i = 0;
+            for (Int2IntMap.Entry entry : blockChanges.int2IntEntrySet()) {
+                final int localPosition = entry.getIntKey();
+                blockChangeRecords[i++] = new BlockChangeRecord1_16_2(localPosition >> 8, localPosition & 15, (localPosition >> 4) & 15, entry.getIntValue());
+            }
+            this.sendSectionBlocksUpdate(chunkX, sectionY, chunkZ, blockChangeRecords);
+        }
+    }
+
+    private static long getSectionPosition(final int chunkX, final int sectionY, final int chunkZ) {
+        return ((chunkX & 0x3FFFFFL) << 42) | ((chunkZ & 0x3FFFFFL) << 20) | (sectionY & 0xFFFFFL);
+    }
+
+    private void sendSectionBlocksUpdate(final int chunkX, final int sectionY, final int chunkZ, final BlockChangeRecord[] blockChanges) {
+        final PacketWrapper sectionBlocksUpdate = PacketWrapper.create(ClientboundPackets1_21.SECTION_BLOCKS_UPDATE, this.user());
+        sectionBlocksUpdate.write(Types.LONG, getSectionPosition(chunkX, sectionY, chunkZ)); // chunk section position
+        sectionBlocksUpdate.write(Types.VAR_LONG_BLOCK_CHANGE_ARRAY, blockChanges); // block changes
+        sectionBlocksUpdate.send(CosmicReachProtocol.class);
+    }
+
+    private void invalidateRemappedChunkSection(final long chunkKey, final int sectionY) {
+        this.chunkVersions.put(chunkKey, ++this.chunkVersionCounter);
+        final Int2ObjectMap<RemappedChunkSection> remappedSections = this.remappedChunkSections.get(chunkKey);
+        if (remappedSections != null) {
+            remappedSections.remove(sectionY);
+        }
+    }
+
+    private RemappedChunkSection[] remapChunk(final CosmicReachChunk chunk) {
         // TODO: Translate block entities
 
         final Int2ObjectMap<CosmicReachChunkSection> cosmicReachSections = chunk.sections();
-        final ChunkSection[] remappedSections = remappedChunk.getSections();
+        final Int2ObjectMap<RemappedChunkSection> cachedSections = this.remappedChunkSections.computeIfAbsent(ChunkPosition.chunkKey(chunk.x(), chunk.z()), k -> new Int2ObjectOpenHashMap<>());
+        final RemappedChunkSection[] remappedSections = new RemappedChunkSection[ProtocolConstants.WORLD_HEIGHT >> 4];
         for (int idx = 0; idx < remappedSections.length; idx++) {
             final int cosmicReachIdx = idx + (ProtocolConstants.WORLD_MIN_Y >> 4);
             final CosmicReachChunkSection cosmicReachChunkSection = cosmicReachSections.get(cosmicReachIdx);
+            if (cosmicReachChunkSection == null) {
+                continue;
+            }
 
-            final ChunkSection remappedSection = remappedSections[idx] = new ChunkSectionImpl(cosmicReachChunkSection != null);
-            final DataPalette remappedBlockPalette = remappedSection.palette(PaletteType.BLOCKS);
-            final DataPalette remappedBiomePalette = new DataPaletteImpl(ChunkSection.BIOME_SIZE);
-            remappedSection.addPalette(PaletteType.BIOMES, remappedBiomePalette);
-            remappedBlockPalette.addId(0);
-            remappedBiomePalette.addId(CosmicReachProtocol.MAPPINGS.getMinecraftPlainsBiomeId());
-            if (cosmicReachChunkSection != null) {
-                final IBlockData<Integer> blockData = cosmicReachChunkSection.blockData();
+            RemappedChunkSection remappedSection = cachedSections.get(cosmicReachIdx);
+            if (remappedSection == null) {
+                remappedSection = remapChunkSection(cosmicReachChunkSection);
+                cachedSections.put(cosmicReachIdx, remappedSection);
+            }
+            remappedSections[idx] = remappedSection;
+        }
+
+        return remappedSections;
+    }
+
+    private void remapChunkAsync(final long chunkKey, final CosmicReachChunk chunk) {
+        // TODO: Translate block entities
+
+        // Only the uncached sections are copied, the remapping itself happens on the worker threads
+        final Int2ObjectMap<CosmicReachChunkSection> cosmicReachSections = chunk.sections();
+        final Int2ObjectMap<RemappedChunkSection> cachedSections = this.remappedChunkSections.computeIfAbsent(chunkKey, k -> new Int2ObjectOpenHashMap<>());
+        final RemappedChunkSection[] remappedSections = new RemappedChunkSection[ProtocolConstants.WORLD_HEIGHT >> 4];
+        final ChunkSectionSnapshot[] snapshots = new ChunkSectionSnapshot[remappedSections.length];
+        for (int idx = 0; idx < remappedSections.length; idx++) {
+            final int cosmicReachIdx = idx + (ProtocolConstants.WORLD_MIN_Y >> 4);
+            final CosmicReachChunkSection cosmicReachChunkSection = cosmicReachSections.get(cosmicReachIdx);
+            if (cosmicReachChunkSection == null) {
+                continue;
+            }
+
+            remappedSections[idx] = cachedSections.get(cosmicReachIdx);
+            if (remappedSections[idx] == null) {
+                snapshots[idx] = createSnapshot(cosmicReachChunkSection);
+            }
+        }
+
+        final long version = this.chunkVersions.getOrDefault(chunkKey, 0L);
+        final EventLoop eventLoop = this.user().getChannel().eventLoop();
+        final CompletableFuture<RemappedChunkSection[]> future = CompletableFuture.supplyAsync(() -> {
+            for (int idx = 0; idx < snapshots.length; idx++) {
+                if (snapshots[idx] != null) {
+                    remappedSections[idx] = remapChunkSection(snapshots[idx]);
+                }
+            }
+            return remappedSections;
+        }, CHUNK_REMAP_EXECUTOR);
+        future.whenComplete((result, throwable) -> eventLoop.execute(this::sendRemappedChunks));
+        this.pendingChunks.add(new PendingChunk(chunkKey, version, future, snapshots));
+    }
+
+    /**
+     * Sends the asynchronously remapped chunks in the order they were queued in. Has to be called on the event loop.
+     */
+    private void sendRemappedChunks() {
+        while (!this.pendingChunks.isEmpty() && this.pendingChunks.peek().future().isDone()) {
+            final PendingChunk pendingChunk = this.pendingChunks.poll();
+            final long chunkKey = pendingChunk.chunkKey();
+            if (!this.user().getChannel().isActive() || (!this.chunks.containsKey(chunkKey) && !this.compressedChunks.containsKey(chunkKey))) {
+                continue;
+            }
+            if (this.chunkVersions.getOrDefault(chunkKey, 0L) != pendingChunk.version()) {
+                // The chunk was modified while it was remapped. Sending the outdated data would revert changes which the client already received.
+                this.dirtyChunks.add(chunkKey);
+                continue;
+            }
+
+            final CosmicReachChunk chunk = this.getChunk(chunkKey);
+            final RemappedChunkSection[] remappedSections;
+            try {
+                remappedSections = pendingChunk.future().join();
+            } catch (Throwable e) {
+                ViaCosmicReach.getPlatform().getLogger().log(Level.WARNING, "Error remapping chunk asynchronously, remapping it on the event loop instead", e);
+                this.sendChunk(chunk, this.remapChunk(chunk));
+                continue;
+            }
+
+            final Int2ObjectMap<RemappedChunkSection> cachedSections = this.remappedChunkSections.computeIfAbsent(chunkKey, k -> new Int2ObjectOpenHashMap<>());
+            for (int idx = 0; idx < remappedSections.length; idx++) {
+                if (pendingChunk.snapshots()[idx] != null) {
+                    cachedSections.put(idx + (ProtocolConstants.WORLD_MIN_Y >> 4), remappedSections[idx]);
+                }
+            }
+            this.sendChunk(chunk, remappedSections);
+        }
+    }
+
+    private static ChunkSectionSnapshot createSnapshot(final CosmicReachChunkSection cosmicReachChunkSection) {
+        return new ChunkSectionSnapshot(cosmicReachChunkSection.blockStates().copy(), cosmicReachChunkSection.blockLight(), cosmicReachChunkSection.contentHash());
+    }
+
+    /**
+     * Remaps the live section. Only allowed on the event loop, worker threads have to use a {@link ChunkSectionSnapshot}.
+     */
+    private static RemappedChunkSection remapChunkSection(final CosmicReachChunkSection cosmicReachChunkSection) {
+        return remapChunkSection(cosmicReachChunkSection.blockStates(), cosmicReachChunkSection.blockLight(), cosmicReachChunkSection.contentHash());
+    }
+
+    private static RemappedChunkSection remapChunkSection(final ChunkSectionSnapshot snapshot) {
+        return remapChunkSection(snapshot.blockStates(), snapshot.blockLight(), snapshot.contentHash());
+    }
+
+    private static RemappedChunkSection remapChunkSection(final BlockStateStorage blockStates, final byte[] blockLight, final byte[] contentHash) {
+        RemappedChunkSection remappedSection = RemappedChunkSectionCache.get(contentHash);
+        if (remappedSection == null) {
+            remappedSection = remapChunkSection0(blockStates, blockLight);
+            RemappedChunkSectionCache.put(contentHash, remappedSection);
+        }
+        return remappedSection;
+    }
+
+    private static RemappedChunkSection remapChunkSection0(final BlockStateStorage blockStates, final byte[] blockLight) {
+        final int airId = CosmicReachProtocol.MAPPINGS.getCosmicReachAirBlockStateId();
+        final int[] blockStateMappings = CosmicReachProtocol.MAPPINGS.getCosmicReachToMinecraftBlockStates();
+        final ByteBuf data = Unpooled.buffer();
+        final byte[] remappedData;
+        try {
+            if (blockStates.isSingleValue()) {
+                final int cosmicReachBlockState = blockStates.get(0);
+                data.writeShort(cosmicReachBlockState != airId ? BlockStateStorage.SIZE : 0); // non air blocks count
+                PaletteUtil.writeSingleValue(data, blockStateMappings[cosmicReachBlockState]); // block states
+            } else {
+                // Translate the palette once, multiple cosmic reach block states can map to the same minecraft block state
+                final int[] cosmicReachPalette = blockStates.getPalette();
+                final int[] paletteIndexByCosmicReachPaletteIndex = new int[blockStates.getPaletteSize()];
+                Arrays.fill(paletteIndexByCosmicReachPaletteIndex, -1);
+                final short[] paletteIndices = new short[BlockStateStorage.SIZE];
+                int[] palette = new int[16];
+                int paletteSize = 0;
                 int nonAirBlockCount = 0;
-                for (int y = 0; y < 16; y++) {
-                    for (int z = 0; z < 16; z++) {
-                        for (int x = 0; x < 16; x++) {
-                            final int cosmicReachBlockState = blockData.getBlockValue(x, y, z);
-                            if (cosmicReachBlockState != airId) {
-                                final int minecraftBlockState = CosmicReachProtocol.MAPPINGS.getCosmicReachToMinecraftBlockStates().get(cosmicReachBlockState);
-                                if (minecraftBlockState != -1) {
-                                    remappedBlockPalette.setIdAt(x, y, z, minecraftBlockState);
-                                } else {
-                                    // TODO: Log missing block state
-                                    //ViaCosmicReach.getPlatform().getLogger().log(Level.WARNING, "Missing cosmic reach -> minecraft block state mapping for " + cosmicReachBlockState);
-                                    remappedBlockPalette.setIdAt(x, y, z, 1);
-                                }
-                                nonAirBlockCount++;
-                            }
+                for (int idx = 0; idx < BlockStateStorage.SIZE; idx++) {
+                    final int cosmicReachPaletteIndex = blockStates.getPaletteIndex(idx);
+                    int paletteIndex = paletteIndexByCosmicReachPaletteIndex[cosmicReachPaletteIndex];
+                    if (paletteIndex == -1) {
+                        final int minecraftBlockState = blockStateMappings[cosmicReachPalette[cosmicReachPaletteIndex]];
+                        paletteIndex = 0;
+                        while (paletteIndex < paletteSize && palette[paletteIndex] != minecraftBlockState) {
+                            paletteIndex++;
                         }
-                    }
-                }
-                remappedSection.setNonAirBlocksCount(nonAirBlockCount);
-
-                final ChunkSectionLight chunkSectionLight = remappedSection.getLight();
-                //final ISkylightData skylightData = cosmicReachChunkSection.skylightData();
-                final ISkylightData skylightData = null; // TODO: Skylight is broken in CR
-                final IBlockLightData blockLightData = cosmicReachChunkSection.blockLightData();
-                /*if (skylightData != null) {
-                    chunkSectionLight.setSkyLight(new byte[2048]);
-                }*/
-                chunkSectionLight.setSkyLight(FULL_LIGHT.clone());
-                final NibbleArray remappedSkyLight = chunkSectionLight.getSkyLightNibbleArray();
-                final NibbleArray remappedBlockLight = chunkSectionLight.getBlockLightNibbleArray();
-                for (int y = 0; y < 16; y++) {
-                    for (int z = 0; z < 16; z++) {
-                        for (int x = 0; x < 16; x++) {
-                            if (skylightData != null) {
-                                remappedSkyLight.set(x, y, z, skylightData.getSkyLight(x, y, z));
-                            }
-                            if (blockLightData != null) {
-                                final short blockLightLevel = blockLightData.getBlockLight(x, y, z);
-                                final int r = (byte) ((blockLightLevel & 0xF00) >> 8);
-                                final int g = (byte) ((blockLightLevel & 0x0F0) >> 4);
-                                final int b = (byte) (blockLightLevel & 0x00F);
-                                remappedBlockLight.set(x, y, z, Math.max(r, Math.max(g, b)));
+                        if (paletteIndex == paletteSize) {
+                            if (paletteSize == palette.length) {
+                                palette = Arrays.copyOf(palette, palette.length * 2);
                             }
+                            palette[paletteSize++] = minecraftBlockState;
                         }
+                        paletteIndexByCosmicReachPaletteIndex[cosmicReachPaletteIndex] = paletteIndex;
+                    }
+                    paletteIndices[idx] = (short) paletteIndex;
+                    if (cosmicReachPalette[cosmicReachPaletteIndex] != airId) {
+                        nonAirBlockCount++;
                     }
                 }
+                data.writeShort(nonAirBlockCount); // non air blocks count
+                PaletteUtil.writeBlockStates(data, palette, paletteSize, paletteIndices, MathUtil.ceilLog2(CosmicReachProtocol.MAPPINGS.getMinecraftBlockStates().size())); // block states
             }
+            PaletteUtil.writeSingleValue(data, CosmicReachProtocol.MAPPINGS.getMinecraftPlainsBiomeId()); // biomes
+
+            remappedData = new byte[data.readableBytes()];
+            data.readBytes(remappedData);
+        } finally {
+            data.release();
         }
 
-        return remappedChunk;
+        // TODO: Skylight is broken in CR
+        return new RemappedChunkSection(remappedData, LightUtil.FULL_LIGHT, blockLight);
+    }
+
+    private record PendingChunk(long chunkKey, long version, CompletableFuture<RemappedChunkSection[]> future, ChunkSectionSnapshot[] snapshots) {
     }
 
 }
@@ -56,6 +56,8 @@ public class PlayerPositionTracker extends StoredObject {
             setChunkCacheCenter.write(Types.VAR_INT, currentChunkX); // chunk x
             setChunkCacheCenter.write(Types.VAR_INT, currentChunkZ); // chunk z
             setChunkCacheCenter.send(CosmicReachProtocol.class);
+
+            this.user().get(ChunkTracker.class).updateCenter(currentChunkX, currentChunkZ);
         }
     }
 
@@ -66,6 +66,13 @@ public class ProtocolStorage implements StorableObject {
         }
     }
 
+    /**
+     * @return The packet or null if the id isn't mapped
+     */
+    public ClientboundCosmicReachPackets findClientboundPacket(final int id) {
+        return this.clientboundPacketRegistry.get(id);
+    }
+
     public int getServerboundPacketId(final ServerboundCosmicReachPackets packet) {
         if (!this.serverboundPacketRegistry.containsKey(packet)) {
             throw new IllegalArgumentException("No packet found with type " + packet);
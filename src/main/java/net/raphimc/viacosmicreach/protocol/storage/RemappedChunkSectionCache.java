@@ -0,0 +1,83 @@
+/*
+ * This file is part of ViaCosmicReach - https://github.com/RaphiMC/ViaCosmicReach
+ * Copyright (C) 2024-2024 RK_01/RaphiMC and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.raphimc.viacosmicreach.protocol.storage;
+
+import net.raphimc.viacosmicreach.protocol.CosmicReachProtocol;
+import net.raphimc.viacosmicreach.protocol.data.ProtocolConstants;
+import net.raphimc.viacosmicreach.protocol.model.RemappedChunkSection;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of remapped chunk sections which is shared between all connections.
+ * Sections are identified by the hash of their serialized cosmic reach data and evicted in least recently used order once the cache exceeds its size limit.
+ */
+public class RemappedChunkSectionCache {
+
+    private static final Map<Key, RemappedChunkSection> CACHE = new LinkedHashMap<>(256, 0.75F, true);
+    private static long cacheSize;
+
+    public static RemappedChunkSection get(final byte[] contentHash) {
+        if (contentHash == null || ProtocolConstants.REMAPPED_CHUNK_SECTION_CACHE_SIZE <= 0) {
+            return null;
+        }
+
+        synchronized (CACHE) {
+            return CACHE.get(new Key(contentHash));
+        }
+    }
+
+    public static void put(final byte[] contentHash, final RemappedChunkSection remappedSection) {
+        if (contentHash == null || ProtocolConstants.REMAPPED_CHUNK_SECTION_CACHE_SIZE <= 0) {
+            return;
+        }
+
+        synchronized (CACHE) {
+            final RemappedChunkSection previous = CACHE.put(new Key(contentHash), remappedSection);
+            if (previous != null) {
+                cacheSize -= getSize(previous);
+            }
+            cacheSize += getSize(remappedSection);
+
+            final Iterator<RemappedChunkSection> iterator = CACHE.values().iterator();
+            while (cacheSize > ProtocolConstants.REMAPPED_CHUNK_SECTION_CACHE_SIZE && iterator.hasNext()) {
+                cacheSize -= getSize(iterator.next());
+                iterator.remove();
+            }
+        }
+    }
+
+    private static int getSize(final RemappedChunkSection remappedSection) {
+        int size = remappedSection.data().length;
+        if (remappedSection.skyLight() != null) size += remappedSection.skyLight().length;
+        if (remappedSection.blockLight() != null) size += remappedSection.blockLight().length;
+        return size;
+    }
+
+    private record Key(ByteBuffer contentHash, int mappingVersion) {
+
+        private Key(final byte[] contentHash) {
+            this(ByteBuffer.wrap(contentHash), CosmicReachProtocol.MAPPINGS.getVersion());
+        }
+
+    }
+
+}
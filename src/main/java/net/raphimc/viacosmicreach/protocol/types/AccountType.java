@@ -18,8 +18,10 @@
 package net.raphimc.viacosmicreach.protocol.types;
 
 import com.viaversion.viaversion.api.type.Type;
+import com.viaversion.viaversion.libs.gson.JsonElement;
 import com.viaversion.viaversion.libs.gson.JsonObject;
 import io.netty.buffer.ByteBuf;
+import net.raphimc.viacosmicreach.api.io.LenientJsonReader;
 import net.raphimc.viacosmicreach.protocol.model.Account;
 import net.raphimc.viacosmicreach.protocol.model.OfflineAccount;
 
@@ -32,10 +34,17 @@ public class AccountType extends Type<Account> {
     @Override
     public Account read(ByteBuf buffer) {
         final String type = CosmicReachTypes.STRING.read(buffer);
-        final JsonObject obj = CosmicReachTypes.JSON_OBJECT.read(buffer);
+        final LenientJsonReader reader = LenientJsonReader.readLengthPrefixed(buffer);
+        if (reader == null) {
+            throw new IllegalArgumentException("Account is missing");
+        }
+        final JsonElement[] fields = reader.readFields("username", "uniqueId");
+        if (fields[0] == null || fields[1] == null) {
+            throw new IllegalArgumentException("Account is missing username or uniqueId");
+        }
 
-        final String username = obj.get("username").getAsString();
-        final String uniqueId = obj.get("uniqueId").getAsString();
+        final String username = fields[0].getAsString();
+        final String uniqueId = fields[1].getAsString();
         return switch (type) {
             case OfflineAccount.TYPE -> new OfflineAccount(username, uniqueId);
             default -> throw new IllegalArgumentException("Unexpected account type: " + type);
@@ -15,29 +15,30 @@
  * You should have received a copy of the GNU General Public License
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
-package net.raphimc.viacosmicreach.netty;
+package net.raphimc.viacosmicreach.protocol.types;
 
-import com.viaversion.viaversion.api.type.Types;
+import com.viaversion.viaversion.api.type.Type;
 import io.netty.buffer.ByteBuf;
-import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.ByteToMessageCodec;
 
-import java.util.List;
+/**
+ * Reads the fields of a chunk column packet which precede the chunk sections and returns the number of chunk sections.
+ */
+public class ChunkColumnHeaderType extends Type<Integer> {
 
-public class PacketIdCodec extends ByteToMessageCodec<ByteBuf> {
+    public ChunkColumnHeaderType() {
+        super(Integer.class);
+    }
 
     @Override
-    protected void encode(ChannelHandlerContext ctx, ByteBuf in, ByteBuf out) {
-        out.writeShort(Types.VAR_INT.readPrimitive(in));
-        out.writeBytes(in);
+    public Integer read(ByteBuf buffer) {
+        CosmicReachTypes.STRING.read(buffer); // zone id
+        // TODO: Handle other fields
+        return buffer.readInt(); // chunk count
     }
 
     @Override
-    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
-        final ByteBuf packet = ctx.alloc().buffer();
-        Types.VAR_INT.writePrimitive(packet, in.readShort());
-        packet.writeBytes(in);
-        out.add(packet);
+    public void write(ByteBuf buffer, Integer value) {
+        throw new UnsupportedOperationException("Cannot serialize chunk column header");
     }
 
 }
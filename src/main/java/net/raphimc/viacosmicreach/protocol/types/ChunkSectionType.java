@@ -17,6 +17,7 @@
  */
 package net.raphimc.viacosmicreach.protocol.types;
 
+import com.viaversion.viaversion.api.minecraft.chunks.NibbleArray;
 import com.viaversion.viaversion.api.type.Type;
 import finalforeach.cosmicreach.savelib.blockdata.IBlockData;
 import finalforeach.cosmicreach.savelib.blockdata.LayeredBlockData;
@@ -24,23 +25,20 @@ import finalforeach.cosmicreach.savelib.blockdata.SingleBlockData;
 import finalforeach.cosmicreach.savelib.lightdata.blocklight.BlockLightLayeredData;
 import finalforeach.cosmicreach.savelib.lightdata.blocklight.IBlockLightData;
 import finalforeach.cosmicreach.savelib.lightdata.blocklight.layers.IBlockLightLayer;
-import finalforeach.cosmicreach.savelib.lightdata.skylight.ISkylightData;
-import finalforeach.cosmicreach.savelib.lightdata.skylight.SkylightLayeredData;
-import finalforeach.cosmicreach.savelib.lightdata.skylight.SkylightSingleData;
-import finalforeach.cosmicreach.savelib.lightdata.skylight.layers.SkylightDataNibbleLayer;
-import finalforeach.cosmicreach.savelib.lightdata.skylight.layers.SkylightDataSingleLayer;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.ByteBufUtil;
 import net.raphimc.viacosmicreach.ViaCosmicReach;
-import net.raphimc.viacosmicreach.api.chunk.CosmicReachBlockEntity;
+import net.raphimc.viacosmicreach.api.chunk.BlockStateStorage;
 import net.raphimc.viacosmicreach.api.chunk.CosmicReachChunkSection;
 import net.raphimc.viacosmicreach.api.io.NettyChunkByteReader;
-import net.raphimc.viacosmicreach.api.model.CosmicReachBlockState;
+import net.raphimc.viacosmicreach.api.util.LightUtil;
 import net.raphimc.viacosmicreach.protocol.CosmicReachProtocol;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.function.Function;
 import java.util.logging.Level;
@@ -49,16 +47,13 @@ import static finalforeach.cosmicreach.savelib.SaveFileConstants.*;
 
 public class ChunkSectionType extends Type<CosmicReachChunkSection> {
 
-    private static final Function<String, Integer> SAVE_KEY_TO_BLOCK_VALUE = blockStateString -> {
-        final CosmicReachBlockState blockState = CosmicReachBlockState.fromString(blockStateString);
-        final int blockStateId = CosmicReachProtocol.MAPPINGS.getCosmicReachBlockStates().getInt(blockState);
-        if (blockStateId != -1) {
-            return blockStateId;
-        } else {
-            ViaCosmicReach.getPlatform().getLogger().log(Level.WARNING, "Missing cosmic reach block state mapping for " + blockStateString);
-            return CosmicReachProtocol.MAPPINGS.getCosmicReachBlockStates().getInt(CosmicReachBlockState.AIR);
+    private static final ThreadLocal<MessageDigest> CONTENT_DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
         }
-    };
+    });
 
     public ChunkSectionType() {
         super(CosmicReachChunkSection.class);
@@ -67,33 +62,29 @@ public class ChunkSectionType extends Type<CosmicReachChunkSection> {
     @Override
     public CosmicReachChunkSection read(ByteBuf buffer) {
         final NettyChunkByteReader reader = new NettyChunkByteReader(buffer);
+        final int startIndex = buffer.readerIndex();
+        final List<String> missingBlockStates = new ArrayList<>(0); // Only logged once the section has been read completely, so sections which are read again with more data don't log twice
+        final Function<String, Integer> saveKeyToBlockValue = blockStateString -> {
+            final int blockStateId = CosmicReachProtocol.MAPPINGS.getCosmicReachBlockStateId(blockStateString);
+            if (blockStateId != -1) {
+                return blockStateId;
+            } else {
+                missingBlockStates.add(blockStateString);
+                return CosmicReachProtocol.MAPPINGS.getCosmicReachAirBlockStateId();
+            }
+        };
         try {
             final byte blockDataType = buffer.readByte();
             final IBlockData<Integer> blockData = switch (blockDataType) {
-                case BLOCK_SINGLE -> SingleBlockData.readFrom(reader, SAVE_KEY_TO_BLOCK_VALUE);
-                case BLOCK_LAYERED -> LayeredBlockData.readFrom(reader, SAVE_KEY_TO_BLOCK_VALUE);
+                case BLOCK_SINGLE -> SingleBlockData.readFrom(reader, saveKeyToBlockValue);
+                case BLOCK_LAYERED -> LayeredBlockData.readFrom(reader, saveKeyToBlockValue);
                 default -> throw new RuntimeException("Unknown block data type: " + blockDataType);
             };
+            final int blockDataEndIndex = buffer.readerIndex();
 
-            final byte skylightDataType = reader.readByte();
-            final ISkylightData skylightData = switch (skylightDataType) {
-                case SKYLIGHTDATA_NULL -> null;
-                case SKYLIGHTDATA_LAYERED -> {
-                    final SkylightLayeredData skylightLayeredData = new SkylightLayeredData();
-                    for (int i = 0; i < 16; i++) {
-                        final byte layerType = reader.readByte();
-                        switch (layerType) {
-                            case 1 -> skylightLayeredData.setLayer(i, SkylightDataSingleLayer.getForLightValue(reader.readByte()));
-                            case 2 -> skylightLayeredData.setLayer(i, new SkylightDataNibbleLayer(ByteBufUtil.getBytes(buffer.readSlice(128))));
-                            default -> throw new RuntimeException("Unknown layered skylight layer type: " + layerType);
-                        }
-                    }
-                    yield skylightLayeredData;
-                }
-                case SKYLIGHTDATA_SINGLE -> SkylightSingleData.getForLightValue(reader.readByte());
-                default -> throw new RuntimeException("Unknown skylight data type: " + skylightDataType);
-            };
+            skipSkylightData(buffer, reader.readByte()); // Skylight isn't used for remapping
 
+            final int blockLightStartIndex = buffer.readerIndex();
             final byte blockLightDataType = reader.readByte();
             final IBlockLightData blockLightData = switch (blockLightDataType) {
                 case BLOCKLIGHTDATA_NULL -> null;
@@ -106,15 +97,14 @@ public class ChunkSectionType extends Type<CosmicReachChunkSection> {
                 }
                 default -> throw new RuntimeException("Unknown block light data type: " + blockLightDataType);
             };
+            final int blockLightEndIndex = buffer.readerIndex();
 
-            final List<CosmicReachBlockEntity> blockEntities = new ArrayList<>();
             final byte blockEntityDataType = reader.readByte();
             switch (blockEntityDataType) {
                 case BLOCKENTITY_NULL -> {
                 }
                 case BLOCKENTITY_DATA -> {
-                    final byte[] crBinData = new byte[reader.readInt()];
-                    reader.readFully(crBinData);
+                    buffer.skipBytes(reader.readInt()); // Block entities aren't translated yet
                     // TODO: Implement CRBin deserialization
                     /*final CRBinDeserializer crBinDeserializer = CRBinDeserializer.getNew();
                     crBinDeserializer.prepareForRead(ByteBuffer.wrap(crBinData));
@@ -126,7 +116,16 @@ public class ChunkSectionType extends Type<CosmicReachChunkSection> {
                 default -> throw new RuntimeException("Unknown block entity data type: " + blockEntityDataType);
             }
 
-            return new CosmicReachChunkSection(blockData, skylightData, blockLightData, blockEntities);
+            for (String blockState : missingBlockStates) {
+                ViaCosmicReach.getPlatform().getLogger().log(Level.WARNING, "Missing cosmic reach block state mapping for " + blockState);
+            }
+
+            // Only the parts which are used for remapping are hashed, so sections which only differ in sky light or block entities share their remapped data
+            final MessageDigest messageDigest = CONTENT_DIGEST.get();
+            messageDigest.reset();
+            messageDigest.update(buffer.nioBuffer(startIndex, blockDataEndIndex - startIndex));
+            messageDigest.update(buffer.nioBuffer(blockLightStartIndex, blockLightEndIndex - blockLightStartIndex));
+            return new CosmicReachChunkSection(toBlockStateStorage(blockData), null, toBlockLight(blockLightData), Collections.emptyList(), messageDigest.digest());
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
@@ -137,4 +136,59 @@ public class ChunkSectionType extends Type<CosmicReachChunkSection> {
         throw new UnsupportedOperationException("Cannot serialize CosmicReachChunkSection");
     }
 
+    private static void skipSkylightData(final ByteBuf buffer, final byte skylightDataType) {
+        switch (skylightDataType) {
+            case SKYLIGHTDATA_NULL -> {
+            }
+            case SKYLIGHTDATA_LAYERED -> {
+                for (int i = 0; i < 16; i++) {
+                    final byte layerType = buffer.readByte();
+                    switch (layerType) {
+                        case 1 -> buffer.skipBytes(1);
+                        case 2 -> buffer.skipBytes(128);
+                        default -> throw new RuntimeException("Unknown layered skylight layer type: " + layerType);
+                    }
+                }
+            }
+            case SKYLIGHTDATA_SINGLE -> buffer.skipBytes(1);
+            default -> throw new RuntimeException("Unknown skylight data type: " + skylightDataType);
+        }
+    }
+
+    private static BlockStateStorage toBlockStateStorage(final IBlockData<Integer> blockData) {
+        if (blockData instanceof SingleBlockData<Integer>) {
+            return new BlockStateStorage(blockData.getBlockValue(0, 0, 0));
+        }
+
+        final int[] blockStates = new int[BlockStateStorage.SIZE];
+        for (int idx = 0; idx < blockStates.length; idx++) {
+            blockStates[idx] = blockData.getBlockValue(idx & 15, idx >> 8, (idx >> 4) & 15);
+        }
+        return BlockStateStorage.fromArray(blockStates);
+    }
+
+    private static byte[] toBlockLight(final IBlockLightData blockLightData) {
+        if (blockLightData == null) {
+            return null;
+        }
+
+        // The client only has a single block light channel, so only the brightest color channel is kept
+        byte[] blockLight = null;
+        NibbleArray nibbleArray = null;
+        for (int idx = 0; idx < BlockStateStorage.SIZE; idx++) {
+            final short blockLightLevel = blockLightData.getBlockLight(idx & 15, idx >> 8, (idx >> 4) & 15);
+            final int r = (blockLightLevel & 0xF00) >> 8;
+            final int g = (blockLightLevel & 0x0F0) >> 4;
+            final int b = blockLightLevel & 0x00F;
+            final int level = Math.max(r, Math.max(g, b));
+            if (level != 0) {
+                if (nibbleArray == null) {
+                    nibbleArray = new NibbleArray(blockLight = new byte[LightUtil.LIGHT_ARRAY_SIZE]);
+                }
+                nibbleArray.set(idx, level);
+            }
+        }
+        return blockLight != null ? LightUtil.share(blockLight) : null;
+    }
+
 }
@@ -18,21 +18,25 @@
 package net.raphimc.viacosmicreach.protocol.types;
 
 import com.viaversion.viaversion.api.minecraft.BlockPosition;
-import com.viaversion.viaversion.api.minecraft.chunks.Chunk;
 import com.viaversion.viaversion.api.type.Type;
 import com.viaversion.viaversion.libs.gson.JsonObject;
 import net.raphimc.viacosmicreach.api.chunk.CosmicReachChunkSection;
 import net.raphimc.viacosmicreach.protocol.model.Account;
+import net.raphimc.viacosmicreach.protocol.model.ChunkColumnSection;
+import net.raphimc.viacosmicreach.protocol.model.RemappedChunkSection;
 
 public class CosmicReachTypes {
 
     public static final Type<String> STRING = new StringType();
     public static final Type<JsonObject> JSON_OBJECT = new JsonObjectType();
+    public static final Type<Void> JSON_SKIP = new JsonSkipType();
 
     public static final Type<Account> ACCOUNT = new AccountType();
     public static final Type<CosmicReachChunkSection> CHUNK_SECTION = new ChunkSectionType();
+    public static final Type<Integer> CHUNK_COLUMN_HEADER = new ChunkColumnHeaderType();
+    public static final Type<ChunkColumnSection> CHUNK_COLUMN_SECTION = new ChunkColumnSectionType();
     public static final Type<BlockPosition> BLOCK_POSITION = new BlockPositionType();
 
-    public static Type<Chunk> MINECRAFT_CHUNK;
+    public static Type<RemappedChunkSection[]> MINECRAFT_CHUNK_SECTIONS;
 
 }
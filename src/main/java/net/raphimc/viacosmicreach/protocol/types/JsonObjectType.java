@@ -18,12 +18,9 @@
 package net.raphimc.viacosmicreach.protocol.types;
 
 import com.viaversion.viaversion.api.type.Type;
-import com.viaversion.viaversion.libs.gson.*;
+import com.viaversion.viaversion.libs.gson.JsonObject;
 import io.netty.buffer.ByteBuf;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-import org.json.JSONTokener;
+import net.raphimc.viacosmicreach.api.io.LenientJsonReader;
 
 public class JsonObjectType extends Type<JsonObject> {
 
@@ -33,12 +30,8 @@ public class JsonObjectType extends Type<JsonObject> {
 
     @Override
     public JsonObject read(ByteBuf buffer) {
-        final String json = CosmicReachTypes.STRING.read(buffer);
-        if (json == null) {
-            return null;
-        } else {
-            return convert(new UnquotedValueJSONTokener(json).nextValue()).getAsJsonObject();
-        }
+        final LenientJsonReader reader = LenientJsonReader.readLengthPrefixed(buffer);
+        return reader != null ? reader.read().getAsJsonObject() : null;
     }
 
     @Override
@@ -50,85 +43,4 @@ public class JsonObjectType extends Type<JsonObject> {
         }
     }
 
-    private static JsonElement convert(final Object object) {
-        if (object instanceof Boolean b) {
-            return new JsonPrimitive(b);
-        } else if (object instanceof Number n) {
-            return new JsonPrimitive(n);
-        } else if (object instanceof String s) {
-            return new JsonPrimitive(s);
-        } else if (object instanceof JSONObject jsonObject) {
-            final JsonObject json = new JsonObject();
-            for (final String key : jsonObject.keySet()) {
-                json.add(key, convert(jsonObject.get(key)));
-            }
-            return json;
-        } else if (object instanceof JSONArray jsonArray) {
-            final JsonArray json = new JsonArray();
-            for (int i = 0; i < jsonArray.length(); i++) {
-                json.add(convert(jsonArray.get(i)));
-            }
-            return json;
-        } else if (object == JSONObject.NULL) {
-            return JsonNull.INSTANCE;
-        } else {
-            throw new IllegalArgumentException("Unsupported object type: " + object.getClass().getName());
-        }
-    }
-
-    private static class UnquotedValueJSONTokener extends JSONTokener {
-
-        public UnquotedValueJSONTokener(final String json) {
-            super(json);
-        }
-
-        @Override
-        public Object nextValue() throws JSONException {
-            char c = this.nextClean();
-            switch (c) {
-                case '{':
-                    this.back();
-                    try {
-                        return new JSONObject(this);
-                    } catch (StackOverflowError e) {
-                        throw new JSONException("JSON Array or Object depth too large to process.", e);
-                    }
-                case '[':
-                    this.back();
-                    try {
-                        return new JSONArray(this);
-                    } catch (StackOverflowError e) {
-                        throw new JSONException("JSON Array or Object depth too large to process.", e);
-                    }
-            }
-            return this.nextSimpleValue(c);
-        }
-
-        private Object nextSimpleValue(char c) {
-            String string;
-
-            switch (c) {
-                case '"':
-                case '\'':
-                    return this.nextString(c);
-            }
-
-            final StringBuilder sb = new StringBuilder();
-            while (c >= ' ' && ",]}/\\\"[{;#".indexOf(c) < 0) {
-                sb.append(c);
-                c = this.next();
-            }
-            if (!this.end()) {
-                this.back();
-            }
-
-            string = sb.toString().trim();
-            if (string.isEmpty()) {
-                throw this.syntaxError("Missing value");
-            }
-            return JSONObject.stringToValue(string);
-        }
-
-    }
-
 }
@@ -15,33 +15,33 @@
  * You should have received a copy of the GNU General Public License
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
-package net.raphimc.viacosmicreach.netty;
+package net.raphimc.viacosmicreach.protocol.types;
 
+import com.viaversion.viaversion.api.type.Type;
 import io.netty.buffer.ByteBuf;
-import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.ByteToMessageCodec;
+import net.raphimc.viacosmicreach.api.io.LenientJsonReader;
 
-import java.util.List;
+/**
+ * Validates and skips a JSON value without building any objects. Used for JSON payloads which are not translated.
+ */
+public class JsonSkipType extends Type<Void> {
 
-public class LengthCodec extends ByteToMessageCodec<ByteBuf> {
+    public JsonSkipType() {
+        super(Void.class);
+    }
 
     @Override
-    protected void encode(ChannelHandlerContext ctx, ByteBuf in, ByteBuf out) {
-        out.writeInt(in.readableBytes());
-        out.writeBytes(in);
+    public Void read(ByteBuf buffer) {
+        final LenientJsonReader reader = LenientJsonReader.readLengthPrefixed(buffer);
+        if (reader != null) {
+            reader.skip();
+        }
+        return null;
     }
 
     @Override
-    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
-        if (in.readableBytes() >= 4) {
-            in.markReaderIndex();
-            final int length = in.readInt();
-            if (in.readableBytes() < length) {
-                in.resetReaderIndex();
-            } else {
-                out.add(in.readBytes(length));
-            }
-        }
+    public void write(ByteBuf buffer, Void value) {
+        throw new UnsupportedOperationException("Cannot serialize skipped JSON");
     }
 
 }
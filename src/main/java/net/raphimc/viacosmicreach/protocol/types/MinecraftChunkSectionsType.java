@@ -0,0 +1,68 @@
+/*
+ * This file is part of ViaCosmicReach - https://github.com/RaphiMC/ViaCosmicReach
+ * Copyright (C) 2024-2024 RK_01/RaphiMC and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.raphimc.viacosmicreach.protocol.types;
+
+import com.viaversion.viaversion.api.type.Type;
+import com.viaversion.viaversion.api.type.Types;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import net.raphimc.viacosmicreach.api.util.PaletteUtil;
+import net.raphimc.viacosmicreach.protocol.model.RemappedChunkSection;
+
+/**
+ * Writes the chunk data of a LEVEL_CHUNK_WITH_LIGHT packet from already serialized sections. Null sections are written as empty sections.
+ */
+public class MinecraftChunkSectionsType extends Type<RemappedChunkSection[]> {
+
+    private final byte[] emptySection;
+
+    public MinecraftChunkSectionsType(final int biomeId) {
+        super(RemappedChunkSection[].class);
+
+        final ByteBuf buffer = Unpooled.buffer();
+        try {
+            buffer.writeShort(0); // non air blocks count
+            PaletteUtil.writeSingleValue(buffer, 0); // block states
+            PaletteUtil.writeSingleValue(buffer, biomeId); // biomes
+            this.emptySection = new byte[buffer.readableBytes()];
+            buffer.readBytes(this.emptySection);
+        } finally {
+            buffer.release();
+        }
+    }
+
+    @Override
+    public RemappedChunkSection[] read(ByteBuf buffer) {
+        throw new UnsupportedOperationException("Cannot deserialize RemappedChunkSection[]");
+    }
+
+    @Override
+    public void write(ByteBuf buffer, RemappedChunkSection[] value) {
+        int length = 0;
+        for (RemappedChunkSection section : value) {
+            length += section != null ? section.data().length : this.emptySection.length;
+        }
+
+        Types.VAR_INT.writePrimitive(buffer, length); // data length
+        buffer.ensureWritable(length);
+        for (RemappedChunkSection section : value) {
+            buffer.writeBytes(section != null ? section.data() : this.emptySection);
+        }
+    }
+
+}
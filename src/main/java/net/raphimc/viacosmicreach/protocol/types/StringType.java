@@ -19,11 +19,16 @@ package net.raphimc.viacosmicreach.protocol.types;
 
 import com.viaversion.viaversion.api.type.Type;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import net.raphimc.viacosmicreach.protocol.data.ProtocolConstants;
 
 import java.nio.charset.StandardCharsets;
 
 public class StringType extends Type<String> {
 
+    private static final int MAX_CACHED_LENGTH = 64;
+    private static final String[] CACHE = new String[1024];
+
     public StringType() {
         super(String.class);
     }
@@ -33,11 +38,33 @@ public class StringType extends Type<String> {
         final int length = buffer.readInt();
         if (length == -1) {
             return null;
-        } else {
-            final byte[] bytes = new byte[length];
-            buffer.readBytes(bytes);
-            return new String(bytes, StandardCharsets.UTF_8);
         }
+
+        final int index = buffer.readerIndex();
+        buffer.skipBytes(length);
+        if (!ProtocolConstants.CACHE_SHORT_STRINGS || length > MAX_CACHED_LENGTH) {
+            return buffer.toString(index, length, StandardCharsets.UTF_8);
+        }
+
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            final byte b = buffer.getByte(index + i);
+            if (b < 0) {
+                return buffer.toString(index, length, StandardCharsets.UTF_8);
+            }
+            hash = 31 * hash + b;
+        }
+
+        // Short ascii strings like ids are repeated very often, so they are looked up in a small cache first.
+        // The hash matches String#hashCode for ascii strings. Strings are immutable, so concurrent access to the cache doesn't need any locking.
+        final int slot = (hash ^ (hash >>> 16)) & (CACHE.length - 1);
+        final String cachedString = CACHE[slot];
+        if (cachedString != null && cachedString.length() == length && cachedString.hashCode() == hash && equalsAscii(cachedString, buffer, index)) {
+            return cachedString;
+        }
+        final String string = buffer.toString(index, length, StandardCharsets.US_ASCII);
+        CACHE[slot] = string;
+        return string;
     }
 
     @Override
@@ -45,10 +72,20 @@ public class StringType extends Type<String> {
         if (value == null) {
             buffer.writeInt(-1);
         } else {
-            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
-            buffer.writeInt(bytes.length);
-            buffer.writeBytes(bytes);
+            final int lengthIndex = buffer.writerIndex();
+            buffer.writeInt(0); // Back-patched once the length is known
+            final int length = ByteBufUtil.writeUtf8(buffer, value);
+            buffer.setInt(lengthIndex, length);
+        }
+    }
+
+    private static boolean equalsAscii(final String string, final ByteBuf buffer, final int index) {
+        for (int i = 0; i < string.length(); i++) {
+            if (string.charAt(i) != buffer.getByte(index + i)) {
+                return false;
+            }
         }
+        return true;
     }
 
 }
@@ -21,9 +21,7 @@ import net.lenni0451.lambdaevents.EventHandler;
 import net.raphimc.netminecraft.constants.IntendedState;
 import net.raphimc.netminecraft.constants.MCPipeline;
 import net.raphimc.viacosmicreach.api.CosmicReachProtocolVersion;
-import net.raphimc.viacosmicreach.netty.LengthCodec;
-import net.raphimc.viacosmicreach.netty.PacketIdCodec;
-import net.raphimc.vialoader.netty.VLPipeline;
+import net.raphimc.viacosmicreach.netty.FrameCodec;
 import net.raphimc.viaproxy.ViaProxy;
 import net.raphimc.viaproxy.plugins.ViaProxyPlugin;
 import net.raphimc.viaproxy.plugins.events.PreConnectEvent;
@@ -51,8 +49,7 @@ public class ViaCosmicReachPlugin extends ViaProxyPlugin {
         if (proxyConnection.getServerVersion().equals(CosmicReachProtocolVersion.cosmicReachLatest)) {
             event.getChannel().pipeline().remove(MCPipeline.COMPRESSION_HANDLER_NAME);
             event.getChannel().pipeline().remove(MCPipeline.ENCRYPTION_HANDLER_NAME);
-            event.getChannel().pipeline().replace(MCPipeline.SIZER_HANDLER_NAME, MCPipeline.SIZER_HANDLER_NAME, new LengthCodec());
-            event.getChannel().pipeline().addBefore(VLPipeline.VIA_CODEC_NAME, "viacosmicreach-packet-id", new PacketIdCodec());
+            event.getChannel().pipeline().replace(MCPipeline.SIZER_HANDLER_NAME, MCPipeline.SIZER_HANDLER_NAME, new FrameCodec(proxyConnection.getUserConnection()));
         }
     }
 